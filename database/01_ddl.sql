@@ -1,8 +0,0 @@
---
--- Database schema
---
-CREATE TABLE messages (
-    id bigint,
-    content character varying(100),
-    timestamp timestamp
-);
@@ -0,0 +1,63 @@
+package io.falcon.assignment.benchmark;
+
+import io.falcon.assignment.Application;
+import io.falcon.assignment.controller.api.MessageRestController;
+import io.falcon.assignment.model.dto.MessagePayload;
+import io.falcon.assignment.utils.TimestampCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The validate and persist path of POST /api/v1/message against the embedded Postgres used by the tests.
+ * The whole application is started, the controller is called directly to leave out the HTTP layer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestBenchmark {
+
+    private ConfigurableApplicationContext context;
+
+    private MessageRestController controller;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // The embedded Postgres data source comes from the test configuration on the classpath
+        context = SpringApplication.run(Application.class, "--server.port=0", "--messages.backfill.enabled=false");
+        controller = context.getBean(MessageRestController.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ResponseEntity postMessage() {
+        return controller.postMessage(new MessagePayload("abrakadabra, the palindromes are everywhere",
+                TimestampCodec.parse("2018-10-09 00:12:12+0100")), null);
+    }
+
+    @Benchmark
+    public ResponseEntity postInvalidMessage() {
+        return controller.postMessage(new MessagePayload("abrakadabra", TimestampCodec.parse("2018-10-09T00:12:12+0100")), null);
+    }
+}
@@ -0,0 +1,148 @@
+package io.falcon.assignment.benchmark;
+
+import io.falcon.assignment.Application;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop load test of POST /api/v1/message, to compare the concurrency ceiling of the execution modes.
+ * <p>
+ * The application is started in this JVM with the given messages.execution.mode, with the embedded Postgres
+ * of the tests. The messages are persisted in the sync ingest mode: the request thread itself runs the insert
+ * and the commit (saveAndFlush), so with the virtual mode the JDBC calls run on the virtual threads.
+ * For every concurrency level, that many clients send requests back to back for the given duration.
+ * The clients are asynchronous and do not use a thread each.
+ * <p>
+ * For every level it prints the throughput, the latency percentiles, the errors, the requests in flight
+ * (throughput x mean latency), the peak number of threads and the heap used. Run both modes with the same -Xmx:
+ * <pre>
+ * mvn -Pbenchmark -DskipTests test -Dbenchmark.jvm.args=-Xmx512m -Dbenchmark.main=io.falcon.assignment.benchmark.LoadTest -Dbenchmark.args="platform 50,200,1000,2000 10"
+ * mvn -Pbenchmark -DskipTests test -Dbenchmark.jvm.args=-Xmx512m -Dbenchmark.main=io.falcon.assignment.benchmark.LoadTest -Dbenchmark.args="virtual 50,200,1000,2000 10"
+ * </pre>
+ * The virtual mode needs Maven to run on Java 21.
+ */
+public class LoadTest {
+
+    private static final String BODY = "{\"content\":\"abrakadabra, the palindromes are everywhere\",\"timestamp\":\"2018-10-09 00:12:12+0100\"}";
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "platform";
+        int[] levels = args.length > 1
+                ? Arrays.stream(args[1].split(",")).mapToInt(Integer::parseInt).toArray()
+                : new int[]{50, 200, 1000, 2000};
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        ConfigurableApplicationContext context = SpringApplication.run(Application.class,
+                "--server.port=0",
+                "--messages.execution.mode=" + mode,
+                "--messages.backfill.enabled=false",
+                "--messages.ingest.mode=sync",
+                "--logging.level.root=WARN");
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(4);
+        HttpClient client = HttpClient.newBuilder()
+                .executor(clientExecutor)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/message"))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofString(BODY))
+                .build();
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        System.out.printf("mode=%s max-heap=%dMB cpus=%d%n", mode, Runtime.getRuntime().maxMemory() >> 20,
+                Runtime.getRuntime().availableProcessors());
+        System.out.printf("%8s %10s %10s %10s %10s %8s %10s %8s %10s%n",
+                "clients", "req/s", "p50 ms", "p99 ms", "max ms", "errors", "in-flight", "threads", "heap MB");
+        try {
+            for (int clients : levels) {
+                System.gc();
+                threads.resetPeakThreadCount();
+                Result result = run(client, request, clients, seconds);
+                Histogram latency = result.latency;
+                double throughput = latency.getTotalCount() / (double) seconds;
+                System.out.printf("%8d %10.0f %10.1f %10.1f %10.1f %8d %10.0f %8d %10d%n",
+                        clients, throughput,
+                        latency.getValueAtPercentile(50) / 1e6,
+                        latency.getValueAtPercentile(99) / 1e6,
+                        latency.getMaxValue() / 1e6,
+                        result.errors,
+                        throughput * latency.getMean() / 1e9,
+                        threads.getPeakThreadCount(),
+                        memory.getHeapMemoryUsage().getUsed() >> 20);
+            }
+        } finally {
+            clientExecutor.shutdownNow();
+            context.close();
+        }
+        // The embedded database leaves a non-daemon thread behind
+        System.exit(0);
+    }
+
+    private static Result run(HttpClient client, HttpRequest request, int clients, int seconds) throws InterruptedException {
+        Recorder recorder = new Recorder(TimeUnit.MINUTES.toNanos(1), 3);
+        AtomicLong errors = new AtomicLong();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        CompletableFuture<?>[] loops = new CompletableFuture<?>[clients];
+        for (int i = 0; i < clients; i++) {
+            loops[i] = loop(client, request, deadline, recorder, errors);
+        }
+        CompletableFuture.allOf(loops).join();
+
+        // The requests sent before the deadline and completed after it are counted, the throughput is slightly high
+        return new Result(recorder.getIntervalHistogram(), errors.get());
+    }
+
+    // Sends the next request when the previous one completes, until the deadline
+    private static CompletableFuture<Void> loop(HttpClient client, HttpRequest request, long deadline,
+                                                Recorder recorder, AtomicLong errors) {
+        if (System.nanoTime() >= deadline) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long start = System.nanoTime();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, failure) -> {
+                    recorder.recordValue(Math.min(System.nanoTime() - start, TimeUnit.MINUTES.toNanos(1)));
+                    if (failure != null || response.statusCode() != 200) {
+                        errors.incrementAndGet();
+                    }
+                    return null;
+                })
+                .thenCompose(ignored -> loop(client, request, deadline, recorder, errors));
+    }
+
+    private static class Result {
+
+        private final Histogram latency;
+
+        private final long errors;
+
+        private Result(Histogram latency, long errors) {
+            this.latency = latency;
+            this.errors = errors;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package io.falcon.assignment.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.falcon.assignment.model.dto.MessagePayload;
+import io.falcon.assignment.model.entity.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization and deserialization of a message, as done by the REST endpoints and the broadcast.
+ * The allocations per operation are given by the gc profiler: -Djmh.args="MessageJsonBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageJsonBenchmark {
+
+    private static final String TIMESTAMP = "2018-10-09 00:12:12+0100";
+
+    // Configured like the ObjectMapper of Spring Boot
+    private ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private Message message;
+
+    private byte[] json;
+
+    @Setup
+    public void setup() throws Exception {
+        message = new Message("abrakadabra, the palindromes are everywhere", TIMESTAMP);
+        message.setLongestPalindromeSize(3);
+        json = objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    // Binding the payload to the entity, as the POST endpoint used to do it
+    @Benchmark
+    public Message deserialize() throws Exception {
+        return objectMapper.readValue(json, Message.class);
+    }
+
+    // Reading the payload with the streaming deserializer and building the entity from it
+    @Benchmark
+    public Message deserializePayload() throws Exception {
+        return objectMapper.readValue(json, MessagePayload.class).toMessage();
+    }
+
+    // The timestamp String -> Timestamp -> String round trip done for every message
+    @Benchmark
+    public String timestampRoundTrip() {
+        Message parsed = new Message();
+        parsed.setTimestamp(TIMESTAMP);
+        return parsed.getTimestamp();
+    }
+}
@@ -0,0 +1,86 @@
+package io.falcon.assignment.benchmark;
+
+import io.falcon.assignment.service.PalindromeService;
+import io.falcon.assignment.utils.LongestPalindromeSize;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The longest palindrome computation on different shapes of message content
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PalindromeBenchmark {
+
+    /**
+     * letters - 40 random letters
+     * punctuation - 40 chars, mostly punctuation and spaces
+     * repetitive - 40 times the same letter, the worst case of the expansion
+     * maximum - 100 random letters, the maximum size of the content
+     */
+    @Param({"letters", "punctuation", "repetitive", "maximum"})
+    private String shape;
+
+    private String content;
+
+    private LongestPalindromeSize longestPalindromeSize = new LongestPalindromeSize();
+
+    private PalindromeService palindromeService = new PalindromeService(new SimpleMeterRegistry(), true, 1000);
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        switch (shape) {
+            case "letters":
+                content = randomContent(random, 40, "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ");
+                break;
+            case "punctuation":
+                content = randomContent(random, 40, "ab .,;:!?-'\"()1234567890");
+                break;
+            case "repetitive":
+                content = randomContent(random, 40, "a");
+                break;
+            case "maximum":
+                content = randomContent(random, 100, "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown shape " + shape);
+        }
+    }
+
+    @Benchmark
+    public int longestPalindrome() {
+        return longestPalindromeSize.longestPalindromicSubstringLinear(content);
+    }
+
+    // Repeated content, the result comes from the memo
+    @Benchmark
+    public Integer longestPalindromeMemoized() {
+        return palindromeService.longestPalindromeSize(content);
+    }
+
+    private static String randomContent(Random random, int length, String alphabet) {
+        StringBuilder content = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            content.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return content.toString();
+    }
+}
@@ -0,0 +1,67 @@
+package io.falcon.assignment.benchmark;
+
+import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.utils.MessageValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The validation of a payload: the javax.validation constraints of the entity, as the endpoints used to do it,
+ * and the MessageValidator
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+    @Param({"valid", "invalid"})
+    private String payload;
+
+    private Message message;
+
+    private Validator validator;
+
+    @Setup
+    public void setup() {
+        message = payload.equals("valid")
+                ? new Message("abrakadabra, the palindromes are everywhere", "2018-10-09 00:12:12+0100")
+                : new Message("", "2018-10-09T00:12:12+0100");
+        validator = Validation.buildDefaultValidatorFactory().getValidator();
+    }
+
+    @Benchmark
+    public List<String> beanValidation() {
+        Set<ConstraintViolation<Message>> violations = validator.validate(message);
+        violations.addAll(validator.validateProperty(message, "timestamp"));
+        List<String> violationMessages = new ArrayList<>();
+        for (ConstraintViolation<Message> violation : violations) {
+            violationMessages.add(violation.getMessage());
+        }
+        return violationMessages;
+    }
+
+    @Benchmark
+    public List<String> messageValidator() {
+        return MessageValidator.validate(message);
+    }
+}
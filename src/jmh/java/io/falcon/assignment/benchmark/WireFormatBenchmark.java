@@ -0,0 +1,102 @@
+package io.falcon.assignment.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.utils.SmileCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON and Smile, the formats of the REST endpoints and the broadcasts: serializing and reading a message
+ * and a list of messages like the one of /api/v1/message/all, and transcoding a broadcast JSON to Smile.
+ * The sizes of the payloads are printed by the setup of every format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    private static final TypeReference<List<Message>> MESSAGE_LIST = new TypeReference<List<Message>>() {
+    };
+
+    @Param({"json", "smile"})
+    private String format;
+
+    @Param({"100"})
+    private int listSize;
+
+    // Configured like the ObjectMappers of Spring Boot and of the Smile converter
+    private ObjectMapper objectMapper;
+
+    private Message message;
+    private List<Message> messages;
+
+    private byte[] messageBytes;
+    private byte[] listBytes;
+    private byte[] messageJson;
+
+    @Setup
+    public void setup() throws Exception {
+        objectMapper = format.equals("smile")
+                ? Jackson2ObjectMapperBuilder.smile().build()
+                : Jackson2ObjectMapperBuilder.json().build();
+
+        message = message(1);
+        messages = new ArrayList<>(listSize);
+        for (int i = 1; i <= listSize; i++) {
+            messages.add(message(i));
+        }
+
+        messageBytes = objectMapper.writeValueAsBytes(message);
+        listBytes = objectMapper.writeValueAsBytes(messages);
+        messageJson = Jackson2ObjectMapperBuilder.json().build().writeValueAsBytes(message);
+        System.out.println(format + ": message " + messageBytes.length + " bytes, list of " + listSize + " messages "
+                + listBytes.length + " bytes");
+    }
+
+    private static Message message(int id) {
+        Message message = new Message("abrakadabra, the palindromes are everywhere " + id, "2018-10-09 00:12:12+0100");
+        message.setId(id);
+        message.setLongestPalindromeSize(3);
+        return message;
+    }
+
+    @Benchmark
+    public byte[] serializeMessage() throws Exception {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] serializeList() throws Exception {
+        return objectMapper.writeValueAsBytes(messages);
+    }
+
+    @Benchmark
+    public List<Message> deserializeList() throws Exception {
+        return objectMapper.readValue(listBytes, MESSAGE_LIST);
+    }
+
+    // The broadcast and the response of POST are encoded once as JSON, Smile is transcoded from it
+    @Benchmark
+    public byte[] transcodeMessage() {
+        return format.equals("smile") ? SmileCodec.fromJson(messageJson) : messageJson;
+    }
+}
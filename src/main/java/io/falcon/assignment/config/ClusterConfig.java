@@ -0,0 +1,58 @@
+package io.falcon.assignment.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.falcon.assignment.service.MessagePageCache;
+import io.falcon.assignment.service.MessageWriteVersion;
+import io.falcon.assignment.service.cluster.ClusterFanout;
+import io.falcon.assignment.service.cluster.ClusterTransport;
+import io.falcon.assignment.service.cluster.InProcessClusterTransport;
+import io.falcon.assignment.service.cluster.MessageHighWaterMark;
+import io.falcon.assignment.service.cluster.PostgresNotifyClusterTransport;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+
+import javax.sql.DataSource;
+
+/**
+ * The node to node fan-out of the broadcasts, only in cluster broker mode.
+ * The transport is either the LISTEN / NOTIFY of the shared PostgreSQL database (postgres)
+ * or a bus between the application contexts of the same JVM (in-process).
+ * The high-water mark of the database goes in the ETags of the listings, for the broadcasts that never arrived.
+ */
+@Configuration
+@ConditionalOnProperty(name = "messages.broker.mode", havingValue = "cluster")
+public class ClusterConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnProperty(name = "messages.broker.cluster.transport", havingValue = "postgres", matchIfMissing = true)
+    public PostgresNotifyClusterTransport postgresNotifyClusterTransport(DataSource dataSource,
+                                                                         @Value("${messages.broker.cluster.channel:messages_broadcast}") String channel) {
+        return new PostgresNotifyClusterTransport(dataSource, channel);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "messages.broker.cluster.transport", havingValue = "in-process")
+    public InProcessClusterTransport inProcessClusterTransport(@Value("${messages.broker.cluster.channel:messages_broadcast}") String channel) {
+        return new InProcessClusterTransport(channel);
+    }
+
+    @Bean
+    public ClusterFanout clusterFanout(ClusterTransport transport, SimpMessageSendingOperations messagingTemplate,
+                                       ObjectMapper objectMapper, MessageWriteVersion writeVersion,
+                                       MessagePageCache messagePageCache, MeterRegistry meterRegistry,
+                                       @Value("${messages.broker.cluster.origin-idle-ms:3600000}") long originIdleMs) {
+        return new ClusterFanout(transport, messagingTemplate, objectMapper, writeVersion, messagePageCache,
+                meterRegistry, originIdleMs);
+    }
+
+    @Bean
+    public MessageHighWaterMark messageHighWaterMark(JdbcTemplate jdbcTemplate,
+                                                     @Value("${messages.broker.cluster.high-water-mark-refresh-ms:1000}") long refreshMs) {
+        return new MessageHighWaterMark(jdbcTemplate, refreshMs);
+    }
+}
@@ -0,0 +1,30 @@
+package io.falcon.assignment.config;
+
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import java.util.List;
+
+/**
+ * The Smile message converter of the REST endpoints, chosen by content negotiation:
+ * a client sending or accepting application/x-jackson-smile gets Smile, JSON stays the default.
+ * Spring MVC would register one with a plain ObjectMapper, this one is customized like the JSON one
+ * (spring.jackson.* properties and modules). It takes the place of the default one, after the JSON converter.
+ */
+@Configuration
+public class SmileConfig {
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(ApplicationContext applicationContext,
+                                                                              List<Jackson2ObjectMapperBuilderCustomizer> customizers) {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.smile().applicationContext(applicationContext);
+        for (Jackson2ObjectMapperBuilderCustomizer customizer : customizers) {
+            customizer.customize(builder);
+        }
+        return new MappingJackson2SmileHttpMessageConverter(builder.build());
+    }
+}
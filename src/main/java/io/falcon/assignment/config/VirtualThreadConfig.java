@@ -0,0 +1,60 @@
+package io.falcon.assignment.config;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The virtual thread execution mode (messages.execution.mode=virtual).
+ * <p>
+ * Tomcat runs every request on its own virtual thread instead of a thread of its pool, the controllers and the
+ * JDBC calls of the repositories run on it. A request blocked on the database only holds a virtual thread,
+ * so the number of concurrent requests is bounded by the connections Tomcat accepts (server.tomcat.max-connections)
+ * instead of server.tomcat.max-threads. The database work is still bounded by the connection pool.
+ * <p>
+ * Virtual threads need Java 21, the application is built for Java 11 so the executor is created by reflection.
+ * The executor belongs to the customizer and is not a bean: an Executor bean would replace the task executor
+ * Spring Boot configures for the application (applicationTaskExecutor).
+ */
+@Configuration
+@ConditionalOnProperty(name = "messages.execution.mode", havingValue = "virtual")
+public class VirtualThreadConfig {
+
+    @Bean
+    public VirtualThreadTomcatCustomizer virtualThreadTomcatCustomizer() {
+        return new VirtualThreadTomcatCustomizer();
+    }
+
+    // Installs a virtual thread per task executor on the connector, shut down with the context
+    public static class VirtualThreadTomcatCustomizer
+            implements WebServerFactoryCustomizer<TomcatServletWebServerFactory>, DisposableBean {
+
+        private final ExecutorService executor;
+
+        public VirtualThreadTomcatCustomizer() {
+            try {
+                executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("messages.execution.mode=virtual needs Java 21 or newer, running on Java "
+                        + System.getProperty("java.version"), e);
+            }
+        }
+
+        @Override
+        public void customize(TomcatServletWebServerFactory factory) {
+            factory.addConnectorCustomizers(connector -> connector.getProtocolHandler().setExecutor(executor));
+        }
+
+        // The requests in progress complete
+        @Override
+        public void destroy() {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package io.falcon.assignment.config;
+
+import io.falcon.assignment.websocket.MonitoredSubProtocolWebSocketHandler;
+import io.falcon.assignment.websocket.WebSocketSessionMonitor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+/**
+ * The STOMP broker infrastructure, configured by the WebSocketMessageBrokerConfigurer beans (see WebSocketConfig).
+ * It replaces @EnableWebSocketMessageBroker only to plug in the handler of the sessions,
+ * which decides what happens to the slow consumers.
+ */
+@Configuration
+public class WebSocketBrokerConfiguration extends DelegatingWebSocketMessageBrokerConfiguration {
+
+    @Autowired
+    private WebSocketSessionMonitor sessionMonitor;
+
+    // disconnect - a session is closed when its send buffer is full
+    // drop - a session with a full send buffer stays connected, the oldest buffered messages are dropped
+    @Value("${messages.websocket.slow-consumer:disconnect}")
+    private String slowConsumer;
+
+    @Bean
+    @Override
+    public WebSocketHandler subProtocolWebSocketHandler() {
+        ConcurrentWebSocketSessionDecorator.OverflowStrategy overflowStrategy = "drop".equals(slowConsumer)
+                ? ConcurrentWebSocketSessionDecorator.OverflowStrategy.DROP
+                : ConcurrentWebSocketSessionDecorator.OverflowStrategy.TERMINATE;
+        return new MonitoredSubProtocolWebSocketHandler(clientInboundChannel(), clientOutboundChannel(),
+                sessionMonitor, overflowStrategy);
+    }
+}
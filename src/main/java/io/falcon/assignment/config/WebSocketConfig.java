@@ -1,14 +1,81 @@
 package io.falcon.assignment.config;
 
+import io.falcon.assignment.websocket.BroadcastBatcher;
+import io.falcon.assignment.websocket.RelayLatencyMonitor;
+import io.falcon.assignment.websocket.SmileBroadcastTranscoder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+// The broker itself is set up by the WebSocketBrokerConfiguration
 @Configuration
-@EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    // simple - in memory broker, the messages only reach the clients connected to this node
+    // relay - external STOMP broker (RabbitMQ, ActiveMQ...) shared by all the nodes
+    // cluster - in memory broker, the broadcasts are fanned out to the other nodes by the ClusterFanout
+    @Value("${messages.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${messages.broker.relay.destination-prefixes:/public}")
+    private String[] relayDestinationPrefixes;
+
+    @Value("${messages.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${messages.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${messages.broker.relay.login:guest}")
+    private String relayLogin;
+
+    @Value("${messages.broker.relay.passcode:guest}")
+    private String relayPasscode;
+
+    @Value("${messages.websocket.inbound.core-pool-size:4}")
+    private int inboundCorePoolSize;
+
+    @Value("${messages.websocket.inbound.max-pool-size:16}")
+    private int inboundMaxPoolSize;
+
+    @Value("${messages.websocket.inbound.queue-capacity:10000}")
+    private int inboundQueueCapacity;
+
+    @Value("${messages.websocket.outbound.core-pool-size:4}")
+    private int outboundCorePoolSize;
+
+    @Value("${messages.websocket.outbound.max-pool-size:16}")
+    private int outboundMaxPoolSize;
+
+    @Value("${messages.websocket.outbound.queue-capacity:10000}")
+    private int outboundQueueCapacity;
+
+    @Value("${messages.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${messages.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${messages.websocket.message-size-limit:65536}")
+    private int messageSizeLimit;
+
+    // Only available when messages.broadcast.batch.enabled
+    @Autowired(required = false)
+    private BroadcastBatcher broadcastBatcher;
+
+    // Only available when messages.broadcast.smile.enabled
+    @Autowired(required = false)
+    private SmileBroadcastTranscoder smileBroadcastTranscoder;
+
+    // Only available in relay broker mode
+    @Autowired(required = false)
+    private RelayLatencyMonitor relayLatencyMonitor;
+
     // Register a websocket endpoint that the clients will use to connect to our websocket server
     // SockJS is used to enable fallback options for browsers that don’t support websocket
     // Using STOMP for defining the format and rules for data exchange
@@ -16,4 +83,69 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/ws").withSockJS();
     }
+
+    @Override
+    public void configureMessageBroker(MessageBrokerRegistry registry) {
+        if ("relay".equals(brokerMode)) {
+            // The same credentials are used for the client connections and the shared system connection
+            registry.enableStompBrokerRelay(relayDestinationPrefixes)
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relayLogin)
+                    .setSystemPasscode(relayPasscode);
+        } else {
+            // No prefix: all the destinations, like the default broker
+            registry.enableSimpleBroker();
+        }
+
+        // A session gets the broadcasts in the order they were sent to the broker, the order of their "seq" headers
+        registry.setPreservePublishOrder(true);
+
+        // The broadcasts sent to the broker are also coalesced into the frames of /public.batch
+        if (broadcastBatcher != null) {
+            registry.configureBrokerChannel().interceptors(broadcastBatcher);
+        }
+
+        // And transcoded to Smile for /public.smile
+        if (smileBroadcastTranscoder != null) {
+            registry.configureBrokerChannel().interceptors(smileBroadcastTranscoder);
+        }
+
+        // The broadcasts are stamped for the relay latency
+        if (relayLatencyMonitor != null) {
+            registry.configureBrokerChannel().interceptors(relayLatencyMonitor.getBrokerInterceptor());
+        }
+    }
+
+    // The thread pools only grow over the core size when their queue is full
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(inboundCorePoolSize)
+                .maxPoolSize(inboundMaxPoolSize)
+                .queueCapacity(inboundQueueCapacity);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(outboundCorePoolSize)
+                .maxPoolSize(outboundMaxPoolSize)
+                .queueCapacity(outboundQueueCapacity);
+
+        // The frames delivered by the external broker are timed against their stamp
+        if (relayLatencyMonitor != null) {
+            registration.interceptors(relayLatencyMonitor.getOutboundInterceptor());
+        }
+    }
+
+    // A session going over one of the send limits is a slow consumer, see messages.websocket.slow-consumer
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setMessageSizeLimit(messageSizeLimit);
+    }
 }
@@ -0,0 +1,75 @@
+package io.falcon.assignment.controller.api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.model.repository.MessageRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+@RestController
+@RequestMapping("/api/v1")
+public class MessageExportController {
+
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private MessageRepository messageRepository;
+    private ObjectWriter messageWriter;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public MessageExportController(MessageRepository messageRepository, ObjectMapper objectMapper) {
+        this.messageRepository = messageRepository;
+
+        // Flushing after every message would send a chunk per row, the servlet output stream is buffered
+        this.messageWriter = objectMapper.writerFor(Message.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * An endpoint exporting all the persisted messages as newline-delimited JSON, one message per line.
+     * The messages are read through a database cursor and written straight to the response,
+     * so the memory used does not depend on the size of the table.
+     *
+     * @param response the response the messages are written to
+     * @throws IOException if writing the response fails
+     */
+    @GetMapping(value = "/message/export", produces = APPLICATION_NDJSON_VALUE)
+    @Transactional(readOnly = true)
+    public void exportMessages(HttpServletResponse response) throws IOException {
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        JsonGenerator generator = messageWriter.getFactory().createGenerator(response.getOutputStream());
+        // The lines are separated explicitly instead of the default root value separator
+        generator.setRootValueSeparator(null);
+
+        try (Stream<Message> messages = messageRepository.streamAll()) {
+            Iterator<Message> iterator = messages.iterator();
+            while (iterator.hasNext()) {
+                Message message = iterator.next();
+                messageWriter.writeValue(generator, message);
+                generator.writeRaw('\n');
+
+                // Without detaching, the persistence context would keep every exported message
+                entityManager.detach(message);
+            }
+        }
+        generator.flush();
+    }
+}
@@ -1,83 +1,405 @@
 package io.falcon.assignment.controller.api;
 
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.falcon.assignment.model.dto.BulkIngestReport;
+import io.falcon.assignment.model.dto.MessagePayload;
 import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.model.repository.MessageCursor;
+import io.falcon.assignment.model.repository.MessageQuery;
 import io.falcon.assignment.model.repository.MessageRepository;
+import io.falcon.assignment.service.IngestQueueFullException;
+import io.falcon.assignment.service.MessageIngestService;
+import io.falcon.assignment.service.MessagePageCache;
+import io.falcon.assignment.service.MessageWriteVersion;
+import io.falcon.assignment.service.PalindromeStatsService;
+import io.falcon.assignment.service.StageTimers;
+import io.falcon.assignment.utils.SmileCodec;
+import io.falcon.assignment.utils.TimestampCodec;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.transaction.TransactionException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
-import javax.validation.ConstraintViolation;
-import javax.validation.Validation;
-import javax.validation.Validator;
-import javax.validation.ValidatorFactory;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/api/v1")
 public class MessageRestController {
 
+    private static final Logger log = LoggerFactory.getLogger(MessageRestController.class);
+
+    // Upper bound of the messages returned in one page, it bounds the memory used by a request
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    // The content of a message has at most 100 chars, a longer search can't match
+    private static final int MAX_SEARCH_SIZE = 100;
+
+    // The trigram index only serves the substrings of at least 3 chars, a shorter one would scan the messages
+    private static final int MIN_CONTAINS_SIZE = 3;
+
     private MessageRepository messageRepository;
-    private SimpMessageSendingOperations messagingTemplate;
+    private MessageIngestService messageIngestService;
+    private MessagePageCache messagePageCache;
+    private MessageWriteVersion writeVersion;
+    private PalindromeStatsService palindromeStatsService;
+
+    private Timer validationTimer;
+    private ObjectReader payloadReader;
 
-    private Validator validator;
+    // How long a request waits for its message to be committed by the write-behind writer
+    @Value("${messages.ingest.commit-timeout-ms:5000}")
+    private long commitTimeoutMs;
 
     @Autowired
-    public MessageRestController(MessageRepository messageRepository, SimpMessageSendingOperations messagingTemplate) {
+    public MessageRestController(MessageRepository messageRepository, MessageIngestService messageIngestService,
+                                 MessagePageCache messagePageCache, MessageWriteVersion writeVersion,
+                                 PalindromeStatsService palindromeStatsService,
+                                 ObjectMapper objectMapper, MeterRegistry meterRegistry) {
         this.messageRepository = messageRepository;
-        this.messagingTemplate = messagingTemplate;
-
-        ValidatorFactory factory = Validation.buildDefaultValidatorFactory();
-        validator = factory.getValidator();
+        this.messageIngestService = messageIngestService;
+        this.messagePageCache = messagePageCache;
+        this.writeVersion = writeVersion;
+        this.palindromeStatsService = palindromeStatsService;
+        this.payloadReader = objectMapper.readerFor(MessagePayload.class);
+        this.validationTimer = StageTimers.timer(meterRegistry, StageTimers.VALIDATION);
     }
 
     /**
      * An endpoint to retrieve all messages persisted in the database
-     * The entities enriched with the longest_palindrome_size property
+     * The entities contain the longest_palindrome_size property stored on ingest
+     * Like the other GET endpoints, it answers in Smile to the clients accepting application/x-jackson-smile
+     * The response has the ETag of the write version, a request with an up to date If-None-Match
+     * gets Not modified without reading the database
+     * The response varies by Accept, the caches keep the JSON and the Smile listings apart
      *
-     * @return list of all the messages
+     * @param webRequest the request, for its conditional headers
+     * @param response   the response, for its Vary header
+     * @return list of all the messages / Not modified
      */
     @GetMapping("/message/all")
-    public ResponseEntity getMessage() {
+    public ResponseEntity getMessage(WebRequest webRequest, HttpServletResponse response) {
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        // Sets the ETag, the version is read before the messages
+        if (webRequest.checkNotModified(writeVersion.getETag())) {
+            return null;
+        }
         List<Message> messages = messageRepository.findAll();
         return ResponseEntity.ok(messages);
     }
 
+    /**
+     * An endpoint to retrieve the persisted messages page by page, ordered by timestamp and id.
+     * It uses keyset pagination, so every page costs the same no matter how deep it is.
+     * The pages are cached until messages that belong to them are posted.
+     * The timestamps use the format of the payload, the range includes "from" and excludes "to".
+     * The filters are applied by the database with the help of its indexes, the next pages are requested
+     * with the same filters and the cursor.
+     * Like /message/all, the pages have the ETag of the write version and can be requested conditionally,
+     * and vary by Accept.
+     *
+     * @param cursor            the next_cursor of the previous page, missing for the first page
+     * @param from              the earliest timestamp of the messages (optional)
+     * @param to                the timestamp the messages are before (optional)
+     * @param contains          a text of at least 3 chars the content of the messages contains, case sensitive (optional)
+     * @param prefix            a text the content of the messages starts with, case sensitive (optional)
+     * @param minPalindromeSize the minimum longest_palindrome_size of the messages (optional)
+     * @param limit             the maximum number of messages in the page, between 1 and 1000
+     * @param webRequest        the request, for its conditional headers
+     * @param response          the response, for its Vary header
+     * @return the page with the cursor of the next one / Not modified / Bad request + violationList
+     */
+    @GetMapping("/message/page")
+    public ResponseEntity getMessagePage(@RequestParam(required = false) String cursor,
+                                         @RequestParam(required = false) String from,
+                                         @RequestParam(required = false) String to,
+                                         @RequestParam(required = false) String contains,
+                                         @RequestParam(required = false) String prefix,
+                                         @RequestParam(name = "min_palindrome_size", required = false) Integer minPalindromeSize,
+                                         @RequestParam(defaultValue = "100") int limit,
+                                         WebRequest webRequest, HttpServletResponse response) {
+
+        List<String> violationMessages = new ArrayList<>();
+
+        MessageCursor after = null;
+        if (cursor != null) {
+            try {
+                after = MessageCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                violationMessages.add("Error: Invalid cursor");
+            }
+        }
+
+        Timestamp fromTimestamp = from == null ? null : TimestampCodec.parse(from);
+        if (from != null && fromTimestamp == null) {
+            violationMessages.add("Error: Invalid from timestamp format");
+        }
+
+        Timestamp toTimestamp = to == null ? null : TimestampCodec.parse(to);
+        if (to != null && toTimestamp == null) {
+            violationMessages.add("Error: Invalid to timestamp format");
+        }
+
+        if (contains != null && (contains.length() < MIN_CONTAINS_SIZE || contains.length() > MAX_SEARCH_SIZE)) {
+            violationMessages.add("Error: The size of the searched text must be between " + MIN_CONTAINS_SIZE
+                    + " and " + MAX_SEARCH_SIZE + " chars");
+        }
+
+        if (prefix != null && (prefix.isEmpty() || prefix.length() > MAX_SEARCH_SIZE)) {
+            violationMessages.add("Error: The size of the prefix must be between 1 and " + MAX_SEARCH_SIZE + " chars");
+        }
+
+        if (minPalindromeSize != null && minPalindromeSize < 0) {
+            violationMessages.add("Error: The minimum palindrome size must not be negative");
+        }
+
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            violationMessages.add("Error: The limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        if (!violationMessages.isEmpty()) {
+            return new ResponseEntity<>(violationMessages, HttpStatus.BAD_REQUEST);
+        }
+
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        if (webRequest.checkNotModified(writeVersion.getETag())) {
+            return null;
+        }
+
+        return ResponseEntity.ok(messagePageCache.getPage(new MessageQuery(
+                fromTimestamp, toTimestamp, contains, prefix, minPalindromeSize, after, limit)));
+    }
+
+    /**
+     * An endpoint to retrieve the aggregates of the longest palindrome sizes: the number of messages,
+     * the maximum and the average size per hour or per day, and the histogram of the sizes.
+     * The aggregates are maintained on ingest, the cost depends on the number of buckets, not of messages.
+     * The timestamps use the format of the payload, the buckets starting from "from" and before "to" are included.
+     *
+     * @param from   the earliest start of the buckets (optional)
+     * @param to     the time the buckets start before (optional)
+     * @param bucket hour or day, default hour
+     * @return the aggregates / Bad request + violationList
+     */
+    @GetMapping("/message/stats")
+    public ResponseEntity getMessageStats(@RequestParam(required = false) String from,
+                                          @RequestParam(required = false) String to,
+                                          @RequestParam(defaultValue = "hour") String bucket) {
+
+        List<String> violationMessages = new ArrayList<>();
+
+        Timestamp fromTimestamp = from == null ? null : TimestampCodec.parse(from);
+        if (from != null && fromTimestamp == null) {
+            violationMessages.add("Error: Invalid from timestamp format");
+        }
+
+        Timestamp toTimestamp = to == null ? null : TimestampCodec.parse(to);
+        if (to != null && toTimestamp == null) {
+            violationMessages.add("Error: Invalid to timestamp format");
+        }
+
+        PalindromeStatsService.Granularity granularity = null;
+        for (PalindromeStatsService.Granularity value : PalindromeStatsService.Granularity.values()) {
+            if (value.name().equalsIgnoreCase(bucket)) {
+                granularity = value;
+            }
+        }
+        if (granularity == null) {
+            violationMessages.add("Error: The bucket must be hour or day");
+        }
+
+        if (!violationMessages.isEmpty()) {
+            return new ResponseEntity<>(violationMessages, HttpStatus.BAD_REQUEST);
+        }
+
+        return ResponseEntity.ok(palindromeStatsService.getStats(fromTimestamp, toTimestamp, granularity));
+    }
+
     /**
      * An endpoint taking a JSON payload, persisting it in the database and
      * broadcasting it through Websockets for listening clients.
-     * The endpoint rejects invalid payloads.
+     * The longest palindrome size is computed once on ingest and stored with the message.
+     * The endpoint rejects invalid payloads, the payload is read and validated without building the entity.
+     * In write-behind mode the messages are persisted in batches and the endpoint answers
+     * Accepted when acknowledging on enqueue, or Service unavailable when the queue is full.
+     * Once persisted, the answer is the message as it was broadcast, the JSON is serialized only once.
+     * The payload and the answer can be Smile instead of JSON (Content-Type / Accept application/x-jackson-smile),
+     * the broadcast JSON is then transcoded.
      *
-     * @param message JSON payload
-     * @return ResponseEntity OK / Bad request + violationList
+     * @param payload JSON or Smile payload
+     * @param accept  the Accept header of the request (optional)
+     * @return ResponseEntity OK + the stored message / Accepted / Bad request + violationList / Service unavailable
      */
     @PostMapping("/message")
-    public ResponseEntity postMessage(@RequestBody Message message) {
+    public ResponseEntity postMessage(@RequestBody MessagePayload payload,
+                                      @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept) {
 
         // Validating the format of the JSON payload
-        Set<ConstraintViolation<Message>> violations = validator.validate(message);
-        violations.addAll(validator.validateProperty(message, "timestamp"));
-
-        // Check if there are any violations
-        if (!violations.isEmpty()) {
-            List<String> violationMessages = new ArrayList<>();
-            for (ConstraintViolation<Message> violation : violations) {
-                // Adding all the violations messages in a list for easy response
-                violationMessages.add(violation.getMessage());
-            }
+        List<String> violationMessages = validate(payload);
+        if (!violationMessages.isEmpty()) {
             // Returns 400 Bad Request with a list of violations
             return new ResponseEntity<>(violationMessages, HttpStatus.BAD_REQUEST);
         }
+        Message message = payload.toMessage();
+
+        // Saves the payload in the database and broadcasts it to the clients listening
+        CompletableFuture<byte[]> ingested;
+        try {
+            ingested = messageIngestService.ingest(message);
+        } catch (IngestQueueFullException e) {
+            // Returns 503 Service Unavailable, the client should retry later
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(Collections.singletonList("Error: Too many messages, retry later"));
+        }
+
+        // In write-behind mode the message may only be queued
+        if (messageIngestService.isAcknowledgedOnEnqueue()) {
+            return new ResponseEntity<>(HttpStatus.ACCEPTED);
+        }
+
+        byte[] json;
+        try {
+            json = ingested.get(commitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Collections.singletonList("Error: The message could not be persisted"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        if (SmileCodec.isPreferred(accept)) {
+            return ResponseEntity.ok().contentType(SmileCodec.APPLICATION_SMILE).body(SmileCodec.fromJson(json));
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(json);
+    }
+
+    /**
+     * An endpoint taking many payloads at once, either as a JSON array or as newline-delimited JSON.
+     * The body is parsed incrementally, so it is never buffered as a whole.
+     * Every item is validated like in the single message endpoint, the valid ones are persisted
+     * in batches and broadcast once their batch is committed.
+     * When a batch can't be persisted, its items are reported as rejected and the reading stops:
+     * the batches before it are committed, the items after it are not in the report and can be sent again.
+     *
+     * @param request the request with the payloads in the body
+     * @return ResponseEntity OK + report with the counts and the rejected items / Bad request + report if the body is malformed
+     * / Service unavailable + report if a batch could not be persisted
+     * @throws IOException if reading the body fails
+     */
+    @PostMapping(value = "/message/bulk",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MessageExportController.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity postMessages(HttpServletRequest request) throws IOException {
+
+        BulkIngestReport report = new BulkIngestReport();
+        int batchSize = messageIngestService.getBatchSize();
+        List<Message> batch = new ArrayList<>(batchSize);
+        List<Integer> batchIndexes = new ArrayList<>(batchSize);
+        int index = 0;
+
+        // A top level array is unwrapped, otherwise the items are read as a sequence of JSON values
+        try (MappingIterator<MessagePayload> items = payloadReader.readValues(request.getInputStream())) {
+            while (items.hasNextValue()) {
+                MessagePayload payload;
+                try {
+                    payload = items.nextValue();
+                } catch (JsonMappingException e) {
+                    // The item has a valid JSON structure but not the one of a message, the next items can still be read
+                    report.reject(index++, Collections.singletonList("Error: Invalid message format"));
+                    continue;
+                }
+
+                List<String> violationMessages = validate(payload);
+                if (!violationMessages.isEmpty()) {
+                    report.reject(index++, violationMessages);
+                    continue;
+                }
+
+                // Accepted until its batch fails
+                batch.add(payload.toMessage());
+                batchIndexes.add(index);
+                report.accept(index++);
+                if (batch.size() == batchSize) {
+                    if (!ingestBatch(batch, batchIndexes, report)) {
+                        return new ResponseEntity<>(report, HttpStatus.SERVICE_UNAVAILABLE);
+                    }
+                    batch = new ArrayList<>(batchSize);
+                    batchIndexes.clear();
+                }
+            }
+        } catch (JsonProcessingException e) {
+            // Malformed JSON, nothing after this point can be read
+            if (!ingestBatch(batch, batchIndexes, report)) {
+                return new ResponseEntity<>(report, HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            report.reject(index, Collections.singletonList("Error: Malformed JSON"));
+            return new ResponseEntity<>(report, HttpStatus.BAD_REQUEST);
+        }
 
-        // Saves the payload in the database
-        messageRepository.saveAndFlush(message);
+        if (!ingestBatch(batch, batchIndexes, report)) {
+            return new ResponseEntity<>(report, HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        return ResponseEntity.ok(report);
+    }
 
-        // Broadcast the payload to the clients listening
-        messagingTemplate.convertAndSend("/public", message);
-        return new ResponseEntity<>(HttpStatus.OK);
+    /**
+     * Persisting a batch of the bulk endpoint
+     *
+     * @param batch   the valid messages, may be empty
+     * @param indexes the indexes of the messages in the request
+     * @param report  the report, the items of the batch are rejected in it if the batch can't be persisted
+     * @return false if the batch could not be persisted
+     */
+    private boolean ingestBatch(List<Message> batch, List<Integer> indexes, BulkIngestReport report) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        try {
+            messageIngestService.ingestBatch(batch);
+            return true;
+        } catch (DataAccessException | TransactionException e) {
+            log.error("Failed to persist a batch of {} messages", batch.size(), e);
+            for (int index : indexes) {
+                report.revoke(index, Collections.singletonList("Error: The message could not be persisted"));
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Validating a payload, with the same violation messages as the javax.validation constraints of the entity
+     *
+     * @param payload the payload
+     * @return the messages of all the violations, empty if the payload is valid
+     */
+    private List<String> validate(MessagePayload payload) {
+        long start = System.nanoTime();
+        List<String> violationMessages = payload.validate();
+        validationTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return violationMessages;
     }
-}
\ No newline at end of file
+}
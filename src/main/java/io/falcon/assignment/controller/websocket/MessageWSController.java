@@ -1,23 +1,36 @@
 package io.falcon.assignment.controller.websocket;
 
 import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.service.MessageBroadcaster;
+import io.falcon.assignment.service.PalindromeService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.stereotype.Controller;
 
 @Controller
 public class MessageWSController {
 
+    private MessageBroadcaster messageBroadcaster;
+
+    private PalindromeService palindromeService;
+
+    @Autowired
+    public MessageWSController(MessageBroadcaster messageBroadcaster, PalindromeService palindromeService) {
+        this.messageBroadcaster = messageBroadcaster;
+        this.palindromeService = palindromeService;
+    }
+
     /**
      * An endpoint to broadcasts the messages through websockets for listening clients
+     * In cluster mode they reach the clients of all the nodes
      *
      * @param message JSON payload
-     * @return the payload
      */
     @MessageMapping("/public.sendMessage")
-    @SendTo("/public")
-    public Message sendMessage(@Payload Message message) {
-        return message;
+    public void sendMessage(@Payload Message message) {
+        // The message is not persisted on this path, but the broadcast carries the same properties as the stored ones
+        message.setLongestPalindromeSize(palindromeService.longestPalindromeSize(message.getContent()));
+        messageBroadcaster.broadcast(message);
     }
 }
@@ -0,0 +1,75 @@
+package io.falcon.assignment.model.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of a bulk ingest: the counts of the accepted and rejected items, and the rejected items with their
+ * errors, in the order they were sent. The accepted items are only counted, the report does not grow with them.
+ */
+public class BulkIngestReport {
+
+    private int accepted;
+
+    private int rejected;
+
+    private List<Rejection> rejections = new ArrayList<>();
+
+    public void accept(int index) {
+        accepted++;
+    }
+
+    public void reject(int index, List<String> errors) {
+        rejected++;
+        rejections.add(new Rejection(index, errors));
+    }
+
+    /**
+     * Rejecting an item accepted before, e.g. when its batch could not be persisted
+     *
+     * @param index  the index of the accepted item
+     * @param errors the reasons
+     */
+    public void revoke(int index, List<String> errors) {
+        accepted--;
+        rejected++;
+        // The items rejected after it are at the end
+        int position = rejections.size();
+        while (position > 0 && rejections.get(position - 1).index > index) {
+            position--;
+        }
+        rejections.add(position, new Rejection(index, errors));
+    }
+
+    public int getAccepted() {
+        return accepted;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    public List<Rejection> getRejections() {
+        return rejections;
+    }
+
+    public static class Rejection {
+
+        private int index;
+
+        private List<String> errors;
+
+        public Rejection(int index, List<String> errors) {
+            this.index = index;
+            this.errors = errors;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
+}
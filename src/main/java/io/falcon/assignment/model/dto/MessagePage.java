@@ -0,0 +1,48 @@
+package io.falcon.assignment.model.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.model.repository.MessageCursor;
+
+import java.util.List;
+
+/**
+ * A page of messages and the cursor to request the next one.
+ * The cursor is null when there are no more messages.
+ */
+public class MessagePage {
+
+    private List<Message> messages;
+
+    private String nextCursor;
+
+    public MessagePage(List<Message> messages, String nextCursor) {
+        this.messages = messages;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Building a page from the result of a query asking for one message more than the limit.
+     * The extra message only tells that there is a next page and it is not returned.
+     *
+     * @param messages up to limit + 1 messages
+     * @param limit    the size of the page
+     * @return the page
+     */
+    public static MessagePage of(List<Message> messages, int limit) {
+        if (messages.size() <= limit) {
+            return new MessagePage(messages, null);
+        }
+        List<Message> page = messages.subList(0, limit);
+        return new MessagePage(page, MessageCursor.of(page.get(limit - 1)).encode());
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    @JsonProperty("next_cursor")
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
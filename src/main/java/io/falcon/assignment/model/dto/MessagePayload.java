@@ -0,0 +1,57 @@
+package io.falcon.assignment.model.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.utils.MessageValidator;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * The payload of a posted message, before it is validated and persisted.
+ * <p>
+ * It is read by the MessagePayloadDeserializer straight from the tokens of the JSON, the timestamp is parsed
+ * while reading and kept as a Timestamp (null when it is missing or has an invalid format).
+ * The Message entity is only built for the valid payloads, when they are persisted.
+ */
+@JsonDeserialize(using = MessagePayloadDeserializer.class)
+public class MessagePayload {
+
+    private final String content;
+
+    private final Timestamp timestamp;
+
+    public MessagePayload(String content, Timestamp timestamp) {
+        this.content = content;
+        this.timestamp = timestamp;
+    }
+
+    @ApiModelProperty(notes = "The content to be broadcast", example = "abrakadabra", required = true)
+    public String getContent() {
+        return content;
+    }
+
+    @ApiModelProperty(notes = "The timestamp of the payload", example = "2018-10-09 00:12:12+0100", dataType = "string",
+            required = true, position = 1)
+    public Timestamp getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the messages of all the violations, empty if the payload is valid
+     */
+    public List<String> validate() {
+        return MessageValidator.validate(content, timestamp);
+    }
+
+    /**
+     * @return a new entity with the content and the timestamp of the payload
+     */
+    public Message toMessage() {
+        Message message = new Message();
+        message.setContent(content);
+        message.setTimestampValue(timestamp);
+        return message;
+    }
+}
@@ -0,0 +1,67 @@
+package io.falcon.assignment.model.dto;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import io.falcon.assignment.utils.TimestampCodec;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+
+/**
+ * Reading a MessagePayload with the streaming parser, without the reflection of the bean deserializer.
+ * <p>
+ * Only the content and the timestamp are read, the timestamp is parsed as soon as its token is read.
+ * The scalar values are taken as text like the bean deserializer does ("content": 123 is "123"),
+ * the other properties are skipped or rejected depending on FAIL_ON_UNKNOWN_PROPERTIES.
+ */
+public class MessagePayloadDeserializer extends StdDeserializer<MessagePayload> {
+
+    public MessagePayloadDeserializer() {
+        super(MessagePayload.class);
+    }
+
+    @Override
+    public MessagePayload deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken token = p.getCurrentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = p.nextToken();
+        }
+        if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+            return (MessagePayload) ctxt.handleUnexpectedToken(MessagePayload.class, p);
+        }
+
+        String content = null;
+        Timestamp timestamp = null;
+        for (; token == JsonToken.FIELD_NAME; token = p.nextToken()) {
+            String name = p.getCurrentName();
+            p.nextToken();
+            switch (name) {
+                case "content":
+                    content = text(p, ctxt);
+                    break;
+                case "timestamp":
+                    timestamp = TimestampCodec.parse(text(p, ctxt));
+                    break;
+                default:
+                    ctxt.handleUnknownProperty(p, this, MessagePayload.class, name);
+            }
+        }
+        return new MessagePayload(content, timestamp);
+    }
+
+    private static String text(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken token = p.getCurrentToken();
+        if (token == JsonToken.VALUE_STRING) {
+            return p.getText();
+        }
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token.isScalarValue()) {
+            return p.getValueAsString();
+        }
+        return (String) ctxt.handleUnexpectedToken(String.class, p);
+    }
+}
@@ -0,0 +1,91 @@
+package io.falcon.assignment.model.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregates of the longest palindrome sizes: the maximum and the average per time bucket
+ * and the histogram of the sizes over all the buckets
+ */
+public class PalindromeStats {
+
+    private long messages;
+
+    private List<Bucket> buckets = new ArrayList<>();
+
+    // Number of messages per longest palindrome size
+    private Map<Integer, Long> histogram = new TreeMap<>();
+
+    /**
+     * Adding the messages with the same size of a bucket, the buckets are added in time order
+     *
+     * @param start          the start of the bucket, in the format of the payload
+     * @param palindromeSize the longest palindrome size
+     * @param count          the number of messages
+     */
+    public void add(String start, int palindromeSize, long count) {
+        Bucket bucket = buckets.isEmpty() ? null : buckets.get(buckets.size() - 1);
+        if (bucket == null || !bucket.start.equals(start)) {
+            bucket = new Bucket(start);
+            buckets.add(bucket);
+        }
+        bucket.add(palindromeSize, count);
+        histogram.merge(palindromeSize, count, Long::sum);
+        messages += count;
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+
+    public List<Bucket> getBuckets() {
+        return buckets;
+    }
+
+    public Map<Integer, Long> getHistogram() {
+        return histogram;
+    }
+
+    public static class Bucket {
+
+        private String start;
+
+        private long messages;
+
+        private int maxPalindromeSize;
+
+        private long totalPalindromeSize;
+
+        private Bucket(String start) {
+            this.start = start;
+        }
+
+        private void add(int palindromeSize, long count) {
+            messages += count;
+            maxPalindromeSize = Math.max(maxPalindromeSize, palindromeSize);
+            totalPalindromeSize += palindromeSize * count;
+        }
+
+        public String getStart() {
+            return start;
+        }
+
+        public long getMessages() {
+            return messages;
+        }
+
+        @JsonProperty("max_palindrome_size")
+        public int getMaxPalindromeSize() {
+            return maxPalindromeSize;
+        }
+
+        @JsonProperty("avg_palindrome_size")
+        public double getAvgPalindromeSize() {
+            return (double) totalPalindromeSize / messages;
+        }
+    }
+}
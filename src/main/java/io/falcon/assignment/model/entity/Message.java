@@ -2,19 +2,17 @@ package io.falcon.assignment.model.entity;
 
 import com.fasterxml.jackson.annotation.JsonGetter;
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import io.falcon.assignment.utils.LongestPalindromeSize;
+import io.falcon.assignment.utils.MessageValidator;
+import io.falcon.assignment.utils.TimestampCodec;
 import io.swagger.annotations.ApiModelProperty;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 import java.sql.Timestamp;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = @Index(name = "messages_timestamp_id_idx", columnList = "timestamp, id"))
 public class Message {
 
     private long id;
@@ -23,6 +21,9 @@ public class Message {
 
     private Timestamp timestamp;
 
+    // The formatted timestamp, so a message is formatted at most once however many times it is serialized
+    private String timestampText;
+
     private Integer longestPalindromeSize;
 
     public Message() {
@@ -30,12 +31,15 @@ public class Message {
 
     public Message(String content, String timestamp) {
         this.content = content;
-        this.timestamp = parseTimestamp(timestamp);
+        this.timestamp = TimestampCodec.parse(timestamp);
     }
 
+    // The ids come from a sequence with pooled allocation, so inserts can be batched by Hibernate
+    // (identity columns force an insert per message to get its id)
     @JsonIgnore
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "messages_id_seq")
+    @SequenceGenerator(name = "messages_id_seq", sequenceName = "messages_id_seq", allocationSize = 50)
     public long getId() {
         return id;
     }
@@ -44,8 +48,9 @@ public class Message {
         this.id = id;
     }
 
-    // Using javax.validation to validate that the content is between 1 and 100 symbols
-    @Size(min = 1, max = 100, message = "Error: The size of the content must be between 1 and 100 chars")
+    // The content is between 1 and 100 symbols. The endpoints check it with the MessageValidator,
+    // the javax.validation constraints give the same messages
+    @Size(min = 1, max = MessageValidator.MAX_CONTENT_SIZE, message = MessageValidator.CONTENT_SIZE_ERROR)
     @ApiModelProperty(notes = "The content to be broadcast", example = "abrakadabra", required = true)
     @Column(name = "content", nullable = false)
     public String getContent() {
@@ -58,51 +63,53 @@ public class Message {
 
     // The validation of Timestamp with javax.validation is NOT suitable for our needs
     // I take the timestamp as a String and parse it to a Timestamp
-    // ParseException will indicate a problem with the format
-    // NotNull constraint will catch the problem and javax Validator will indicate that in the Controller on validation
+    // A null result of the parsing will indicate a problem with the format
+    // The MessageValidator (and the NotNull constraint) will catch the problem in the Controller on validation
+    //
+    // Flow on invalid format: new Message object -> TimestampCodec.parse returns null -> timestamp = null ->
+    // -> MessageValidator.validate(msg) returns [Error: Invalid timestamp format]
     //
-    // Flow on invalid format: new Message object -> ParseException caught -> timestamp = null ->
-    // -> Validator.validate(msg) returns ConstraintViolation(Error: Invalid timestamp format)
-    @NotNull(message = "Error: Invalid timestamp format")
+    // The String is only the JSON representation, the column is mapped by getTimestampValue()
+    @NotNull(message = MessageValidator.TIMESTAMP_FORMAT_ERROR)
     @ApiModelProperty(notes = "The timestamp of the payload", example = "2018-10-09 00:12:12+0100", required = true, position = 1)
-    @Column(name = "timestamp", nullable = true)
+    @Transient
     public String getTimestamp() {
-        return timestamp == null ? null : new SimpleDateFormat("yyyy-MM-dd HH:mm:ssZZZZ").format(timestamp);
+        if (timestampText == null && timestamp != null) {
+            timestampText = TimestampCodec.format(timestamp);
+        }
+        return timestampText;
     }
 
     public void setTimestamp(String timestamp) {
-        this.timestamp = parseTimestamp(timestamp);
+        this.timestamp = TimestampCodec.parse(timestamp);
+        this.timestampText = null;
     }
 
-    // I don't store the longest palindrome size for every content in the database
-    // so this properties is not mapped to a column
+    // The timestamp is stored as a real timestamp column, so range queries and ordering work on it
+    @JsonIgnore
+    @Column(name = "timestamp", nullable = true)
+    public Timestamp getTimestampValue() {
+        return timestamp;
+    }
+
+    public void setTimestampValue(Timestamp timestamp) {
+        this.timestamp = timestamp;
+        this.timestampText = null;
+    }
+
+    // The longest palindrome size is computed once when the message is ingested and stored with it,
+    // so reads never run the algorithm again. Rows persisted before the column existed are filled in
+    // by the PalindromeBackfillJob
     // I hide it in the example POST request in the Swagger documentation, but I dont ignore it using jackson (like "id"),
     // because I need it in my responses of the GET requests
     @ApiModelProperty(hidden = true)
     @JsonGetter(value = "longest_palindrome_size")
+    @Column(name = "longest_palindrome_size")
     public Integer getLongestPalindromeSize() {
-        LongestPalindromeSize lps = new LongestPalindromeSize();
-        return lps.longestPalindromicSubstringLinear(this.content);
+        return longestPalindromeSize;
     }
 
     public void setLongestPalindromeSize(Integer longestPalindromeSize) {
         this.longestPalindromeSize = longestPalindromeSize;
     }
-
-    /**
-     * Parsing String to Timestamp in a specific format
-     * If there is a problem parsing the String it will return null
-     *
-     * @param timestamp the time as a String
-     * @return Timestamp parsed from the input / null
-     */
-    private Timestamp parseTimestamp(String timestamp) {
-        try {
-            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ssZZZZ");
-            Date parsedDate = dateFormat.parse(timestamp);
-            return new java.sql.Timestamp(parsedDate.getTime());
-        } catch (ParseException e) {
-            return null;
-        }
-    }
 }
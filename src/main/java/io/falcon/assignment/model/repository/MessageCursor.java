@@ -0,0 +1,95 @@
+package io.falcon.assignment.model.repository;
+
+import io.falcon.assignment.model.entity.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Position of a message in the (timestamp, id) order used for keyset pagination.
+ * The token given to the clients is an opaque url-safe Base64 string.
+ */
+public class MessageCursor {
+
+    private final Timestamp timestamp;
+
+    private final long id;
+
+    public MessageCursor(Timestamp timestamp, long id) {
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    /**
+     * The cursor pointing right after the given message
+     *
+     * @param message the last message of a page
+     * @return the cursor of the message
+     */
+    public static MessageCursor of(Message message) {
+        return new MessageCursor(message.getTimestampValue(), message.getId());
+    }
+
+    /**
+     * Decoding a token produced by {@link #encode()}
+     *
+     * @param token the cursor as given to the clients
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the token is not valid
+     */
+    public static MessageCursor decode(String token) {
+        String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII);
+        int separator = decoded.indexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + token);
+        }
+        try {
+            long millis = Long.parseLong(decoded.substring(0, separator));
+            long id = Long.parseLong(decoded.substring(separator + 1));
+            return new MessageCursor(new Timestamp(millis), id);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+
+    /**
+     * @param message a message
+     * @return true if the message comes after this position in the (timestamp, id) order
+     */
+    public boolean precedes(Message message) {
+        int order = message.getTimestampValue().compareTo(timestamp);
+        return order > 0 || order == 0 && message.getId() > id;
+    }
+
+    public String encode() {
+        String plain = timestamp.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public Timestamp getTimestamp() {
+        return timestamp;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MessageCursor)) {
+            return false;
+        }
+        MessageCursor other = (MessageCursor) o;
+        return id == other.id && timestamp.equals(other.timestamp);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(timestamp, id);
+    }
+}
@@ -0,0 +1,120 @@
+package io.falcon.assignment.model.repository;
+
+import io.falcon.assignment.model.entity.Message;
+
+import java.sql.Timestamp;
+import java.util.Objects;
+
+/**
+ * Filters and position of a page of messages ordered by (timestamp, id).
+ * All the filters are optional, the time range includes "from" and excludes "to".
+ * The content filters are case sensitive, "contains" searches a substring and "prefix" the start of the content.
+ * Two queries with the same filters and position are equal, so they can be used as cache keys.
+ */
+public class MessageQuery {
+
+    private Timestamp from;
+
+    private Timestamp to;
+
+    private String contains;
+
+    private String prefix;
+
+    private Integer minPalindromeSize;
+
+    private MessageCursor after;
+
+    private int limit;
+
+    public MessageQuery(Timestamp from, Timestamp to, MessageCursor after, int limit) {
+        this(from, to, null, null, null, after, limit);
+    }
+
+    public MessageQuery(Timestamp from, Timestamp to, String contains, String prefix, Integer minPalindromeSize,
+                        MessageCursor after, int limit) {
+        this.from = from;
+        this.to = to;
+        this.contains = contains;
+        this.prefix = prefix;
+        this.minPalindromeSize = minPalindromeSize;
+        this.after = after;
+        this.limit = limit;
+    }
+
+    /**
+     * @param limit the maximum number of messages
+     * @return the same query with another limit
+     */
+    public MessageQuery withLimit(int limit) {
+        return new MessageQuery(from, to, contains, prefix, minPalindromeSize, after, limit);
+    }
+
+    public Timestamp getFrom() {
+        return from;
+    }
+
+    public Timestamp getTo() {
+        return to;
+    }
+
+    public String getContains() {
+        return contains;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public Integer getMinPalindromeSize() {
+        return minPalindromeSize;
+    }
+
+    public MessageCursor getAfter() {
+        return after;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Checking a message against the filters and the position of the query, without the limit
+     *
+     * @param message a persisted message
+     * @return true if the message could be part of the result
+     */
+    public boolean matches(Message message) {
+        Timestamp timestamp = message.getTimestampValue();
+        Integer palindromeSize = message.getLongestPalindromeSize();
+        return (from == null || timestamp.compareTo(from) >= 0)
+                && (to == null || timestamp.compareTo(to) < 0)
+                && (contains == null || message.getContent().contains(contains))
+                && (prefix == null || message.getContent().startsWith(prefix))
+                && (minPalindromeSize == null || palindromeSize != null && palindromeSize >= minPalindromeSize)
+                && (after == null || after.precedes(message));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MessageQuery)) {
+            return false;
+        }
+        MessageQuery other = (MessageQuery) o;
+        return limit == other.limit
+                && Objects.equals(from, other.from)
+                && Objects.equals(to, other.to)
+                && Objects.equals(contains, other.contains)
+                && Objects.equals(prefix, other.prefix)
+                && Objects.equals(minPalindromeSize, other.minPalindromeSize)
+                && Objects.equals(after, other.after);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(from, to, contains, prefix, minPalindromeSize, after, limit);
+    }
+}
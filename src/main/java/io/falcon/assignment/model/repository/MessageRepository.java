@@ -1,9 +1,46 @@
 package io.falcon.assignment.model.repository;
 
 import io.falcon.assignment.model.entity.Message;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
 @Repository
-public interface MessageRepository extends JpaRepository<Message, Long> {
+public interface MessageRepository extends JpaRepository<Message, Long>, MessageRepositoryCustom {
+
+    /**
+     * Messages persisted before the longest palindrome size was stored with them,
+     * in id order starting after the given id
+     *
+     * @param afterId  the last id that was already processed
+     * @param pageable the size of the batch
+     * @return messages without longest palindrome size
+     */
+    @Query("select m from Message m where m.longestPalindromeSize is null and m.id > :afterId order by m.id")
+    List<Message> findWithoutLongestPalindromeSize(@Param("afterId") long afterId, Pageable pageable);
+
+    /**
+     * All the messages in id order, read through a forward-only database cursor.
+     * The rows are fetched from the database in chunks while the stream is consumed,
+     * so the whole table is never loaded in memory.
+     * It has to be consumed and closed inside a transaction.
+     *
+     * @return stream of all the messages
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("select m from Message m order by m.id")
+    Stream<Message> streamAll();
 }
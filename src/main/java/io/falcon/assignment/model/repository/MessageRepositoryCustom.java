@@ -0,0 +1,18 @@
+package io.falcon.assignment.model.repository;
+
+import io.falcon.assignment.model.entity.Message;
+
+import java.util.List;
+
+public interface MessageRepositoryCustom {
+
+    /**
+     * Keyset pagination over the messages ordered by (timestamp, id).
+     * The page starts right after the cursor of the query, so the cost of a page
+     * does not depend on how deep it is.
+     *
+     * @param query filters, cursor and the maximum number of messages
+     * @return up to query.limit messages
+     */
+    List<Message> findPage(MessageQuery query);
+}
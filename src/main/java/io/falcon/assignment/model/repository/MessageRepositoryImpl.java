@@ -0,0 +1,82 @@
+package io.falcon.assignment.model.repository;
+
+import io.falcon.assignment.model.entity.Message;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MessageRepositoryImpl implements MessageRepositoryCustom {
+
+    private static final char ESCAPE = '\\';
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Message> findPage(MessageQuery query) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Message> criteria = cb.createQuery(Message.class);
+        Root<Message> message = criteria.from(Message.class);
+        Path<Timestamp> timestamp = message.get("timestampValue");
+        Path<Long> id = message.get("id");
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (query.getFrom() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(timestamp, query.getFrom()));
+        }
+        if (query.getTo() != null) {
+            predicates.add(cb.lessThan(timestamp, query.getTo()));
+        }
+
+        // The LIKE patterns are served by the trigram index of the content
+        Path<String> content = message.get("content");
+        if (query.getContains() != null) {
+            predicates.add(cb.like(content, "%" + escapeLike(query.getContains()) + "%", ESCAPE));
+        }
+        if (query.getPrefix() != null) {
+            predicates.add(cb.like(content, escapeLike(query.getPrefix()) + "%", ESCAPE));
+        }
+        if (query.getMinPalindromeSize() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(message.get("longestPalindromeSize"), query.getMinPalindromeSize()));
+        }
+
+        MessageCursor after = query.getAfter();
+        if (after != null) {
+            // (timestamp, id) > (cursor.timestamp, cursor.id)
+            // The first condition is implied by the second one, but it is the one that bounds the index scan
+            predicates.add(cb.greaterThanOrEqualTo(timestamp, after.getTimestamp()));
+            predicates.add(cb.or(
+                    cb.greaterThan(timestamp, after.getTimestamp()),
+                    cb.greaterThan(id, after.getId())));
+        }
+
+        criteria.select(message)
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(cb.asc(timestamp), cb.asc(id));
+
+        return entityManager.createQuery(criteria)
+                .setMaxResults(query.getLimit())
+                .getResultList();
+    }
+
+    // The searched text is matched literally, its wildcards are escaped
+    private static String escapeLike(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '%' || c == '_' || c == ESCAPE) {
+                escaped.append(ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
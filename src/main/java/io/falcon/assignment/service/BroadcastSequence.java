@@ -0,0 +1,87 @@
+package io.falcon.assignment.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The sequence numbers of the broadcasts of this node, and the ids of the messages they were given to.
+ * <p>
+ * The ids come from a pooled database sequence, the messages are not committed nor broadcast in id order:
+ * a client keeping the highest id it has seen would miss the lower ids broadcast after it.
+ * The sequence numbers are assigned when the messages are sent to the broker, 1, 2, 3... in the order
+ * the clients receive them. They are only meaningful on the node that assigned them, so they come with the id
+ * of the node, random for every run.
+ * <p>
+ * The ids of the last index-size broadcasts are kept in a ring, to read the messages of a gap from the database.
+ * There is one writer at a time (the broadcaster assigns the numbers under its lock), the readers never block it.
+ */
+public class BroadcastSequence {
+
+    private final String nodeId;
+
+    private final long[] ids;
+    private final int mask;
+
+    // The last sequence number, 0 before the first broadcast
+    private volatile long last;
+
+    /**
+     * @param nodeId    the id of this node
+     * @param indexSize the number of ids kept, rounded up to a power of two
+     */
+    public BroadcastSequence(String nodeId, int indexSize) {
+        int size = Integer.highestOneBit(Math.max(1, indexSize - 1)) << 1;
+        this.nodeId = nodeId;
+        this.ids = new long[size];
+        this.mask = size - 1;
+    }
+
+    public static String randomNodeId() {
+        return Long.toHexString(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Assigning the next sequence number, called by one thread at a time
+     *
+     * @param id the id of the broadcast message
+     * @return its sequence number
+     */
+    public long next(long id) {
+        long seq = last + 1;
+        ids[(int) (seq & mask)] = id;
+        // Publishes the id to the readers
+        last = seq;
+        return seq;
+    }
+
+    /**
+     * The ids of the messages broadcast after a sequence number
+     *
+     * @param seq the last sequence number the reader has seen
+     * @param max the maximum number of ids
+     * @return the ids of the next sequence numbers, in sequence order, or null if some of them are no longer kept
+     */
+    public long[] idsAfter(long seq, int max) {
+        long end = last;
+        if (!covers(seq, end)) {
+            return null;
+        }
+        long[] result = new long[(int) Math.min(max, Math.max(0, end - seq))];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids[(int) ((seq + 1 + i) & mask)];
+        }
+        // A slot could be overwritten while it was read
+        return covers(seq, last) ? result : null;
+    }
+
+    private boolean covers(long seq, long end) {
+        return seq >= 0 && seq >= end - ids.length;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getLast() {
+        return last;
+    }
+}
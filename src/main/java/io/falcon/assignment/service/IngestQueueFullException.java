@@ -0,0 +1,15 @@
+package io.falcon.assignment.service;
+
+/**
+ * Thrown when the write-behind queue has no space left for a new message, or no longer takes messages
+ */
+public class IngestQueueFullException extends RuntimeException {
+
+    public IngestQueueFullException() {
+        super("The ingest queue is full");
+    }
+
+    public IngestQueueFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,229 @@
+package io.falcon.assignment.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.service.cluster.ClusterFanout;
+import io.falcon.assignment.websocket.BroadcastBatcher;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Broadcasts the messages to the Websocket clients listening at /public.
+ * <p>
+ * The message is serialized to JSON once, the broker sends the same bytes to every subscriber
+ * and the caller can reuse them, e.g. as the body of the response.
+ * The persisted messages are numbered when they are sent to the broker (see BroadcastSequence): they carry
+ * the number as the "seq" header and the id of the node as "seq-node", and are kept in a ring buffer of the recent
+ * messages, which the clients that reconnect can get replayed (see ReplayOnSubscribe).
+ * The numbers are assigned and the messages queued under a lock, and sent to the broker from the queue in sequence
+ * order. The callers do not wait for each other's sends: one of them sends the queued messages while the others
+ * return, a message the broker fails to take is logged and left to the replay.
+ * The message is sent to the broker of this node. In cluster mode it is also published to the other nodes,
+ * which number it and send it to their own clients.
+ * The messages committed together by the bulk endpoint are sent to /public one by one and to /public.batch
+ * as one frame, instead of going through the window of the BroadcastBatcher.
+ * The serialization and the hand-off to the broker (and to the cluster) are timed as the serialize and fanout stages.
+ */
+@Component
+public class MessageBroadcaster {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageBroadcaster.class);
+
+    public static final String DESTINATION = "/public";
+
+    public static final String SEQ_HEADER = "seq";
+
+    public static final String SEQ_NODE_HEADER = "seq-node";
+
+    // Set on the /public messages already sent to /public.batch as part of a batch, they are not batched again
+    public static final String COALESCED_HEADER = "coalesced";
+
+    private SimpMessageSendingOperations messagingTemplate;
+
+    private ObjectWriter messageWriter;
+
+    private RecentMessageBuffer recentMessages;
+
+    private BroadcastSequence sequence;
+
+    private final Object sendLock = new Object();
+
+    // The numbered messages not sent to the broker yet, in sequence order
+    private final Queue<org.springframework.messaging.Message<byte[]>> outbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean dispatching = new AtomicBoolean();
+
+    private Timer serializeTimer;
+    private Timer fanoutTimer;
+
+    // Only available in cluster mode
+    private ClusterFanout clusterFanout;
+
+    // Only available when messages.broadcast.batch.enabled
+    private BroadcastBatcher broadcastBatcher;
+
+    @Autowired
+    public MessageBroadcaster(SimpMessageSendingOperations messagingTemplate, ObjectMapper objectMapper,
+                              ObjectProvider<ClusterFanout> clusterFanout,
+                              ObjectProvider<BroadcastBatcher> broadcastBatcher, MeterRegistry meterRegistry,
+                              @Value("${messages.replay.buffer-size:1024}") int bufferSize,
+                              @Value("${messages.replay.index-size:65536}") int indexSize) {
+        this.messagingTemplate = messagingTemplate;
+        this.messageWriter = objectMapper.writerFor(Message.class);
+        this.recentMessages = new RecentMessageBuffer(bufferSize);
+        this.serializeTimer = StageTimers.timer(meterRegistry, StageTimers.SERIALIZE);
+        this.fanoutTimer = StageTimers.timer(meterRegistry, StageTimers.FANOUT);
+        this.clusterFanout = clusterFanout.getIfAvailable();
+        this.broadcastBatcher = broadcastBatcher.getIfAvailable();
+
+        // In cluster mode the node has the id it has in the envelopes
+        this.sequence = new BroadcastSequence(this.clusterFanout == null
+                ? BroadcastSequence.randomNodeId() : this.clusterFanout.getNodeId(), indexSize);
+        if (this.clusterFanout != null) {
+            this.clusterFanout.setRelayListener(this::relay);
+        }
+    }
+
+    /**
+     * Broadcasting a message
+     *
+     * @param message the message
+     * @return the JSON of the message, as it was broadcast
+     */
+    public byte[] broadcast(Message message) {
+        byte[] json = encode(message);
+        long start = System.nanoTime();
+        send(message.getId(), json, false);
+        publish(message.getId(), json);
+        fanoutTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return json;
+    }
+
+    /**
+     * Broadcasting messages committed together, they are sent to /public.batch in a single frame
+     *
+     * @param messages the messages
+     */
+    public void broadcastBatch(List<Message> messages) {
+        if (broadcastBatcher == null) {
+            for (Message message : messages) {
+                broadcast(message);
+            }
+            return;
+        }
+
+        List<byte[]> items = new ArrayList<>(messages.size());
+        long lastSeq = 0;
+        for (Message message : messages) {
+            byte[] json = encode(message);
+            long start = System.nanoTime();
+            lastSeq = Math.max(lastSeq, send(message.getId(), json, true));
+            publish(message.getId(), json);
+            fanoutTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            items.add(json);
+        }
+        broadcastBatcher.addBatch(items, lastSeq, sequence.getNodeId());
+    }
+
+    // A broadcast of another node, numbered by this node
+    private void relay(String destination, long id, byte[] json) {
+        if (DESTINATION.equals(destination)) {
+            send(id, json, false);
+            return;
+        }
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        headers.setLeaveMutable(true);
+        messagingTemplate.send(destination, MessageBuilder.createMessage(json, headers.getMessageHeaders()));
+    }
+
+    // Returns the sequence number of the message, 0 if it has none
+    private long send(long id, byte[] json, boolean coalesced) {
+        // The payload is already JSON, the message converter of the template is skipped
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        if (coalesced) {
+            headers.setHeader(COALESCED_HEADER, Boolean.TRUE);
+        }
+        headers.setLeaveMutable(true);
+
+        // The messages only sent through Websockets are not persisted, they have no id / sequence number
+        if (id <= 0) {
+            messagingTemplate.send(DESTINATION, MessageBuilder.createMessage(json, headers.getMessageHeaders()));
+            return 0;
+        }
+        long seq;
+        synchronized (sendLock) {
+            seq = sequence.next(id);
+            recentMessages.add(seq, json);
+            headers.setNativeHeader(SEQ_HEADER, Long.toString(seq));
+            headers.setNativeHeader(SEQ_NODE_HEADER, sequence.getNodeId());
+            outbox.add(MessageBuilder.createMessage(json, headers.getMessageHeaders()));
+        }
+        dispatch();
+        return seq;
+    }
+
+    // Sending the queued messages unless another caller is, a message queued while it stops is sent by this one
+    private void dispatch() {
+        while (!outbox.isEmpty() && dispatching.compareAndSet(false, true)) {
+            try {
+                org.springframework.messaging.Message<byte[]> message;
+                while ((message = outbox.poll()) != null) {
+                    try {
+                        messagingTemplate.send(DESTINATION, message);
+                    } catch (RuntimeException e) {
+                        log.error("Failed to send the message {} to the broker",
+                                SimpMessageHeaderAccessor.getFirstNativeHeader(SEQ_HEADER, message.getHeaders()), e);
+                    }
+                }
+            } finally {
+                dispatching.set(false);
+            }
+        }
+    }
+
+    private void publish(long id, byte[] json) {
+        if (clusterFanout != null) {
+            clusterFanout.publish(DESTINATION, id, json);
+        }
+    }
+
+    public RecentMessageBuffer getRecentMessages() {
+        return recentMessages;
+    }
+
+    public BroadcastSequence getSequence() {
+        return sequence;
+    }
+
+    public byte[] encode(Message message) {
+        long start = System.nanoTime();
+        try {
+            return messageWriter.writeValueAsBytes(message);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize a message", e);
+        } finally {
+            serializeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package io.falcon.assignment.service;
+
+import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.model.repository.MessageRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Persists the validated messages and broadcasts them to the Websocket clients.
+ * <p>
+ * There are two modes:
+ * <ul>
+ * <li>sync - every message is saved in its own transaction by the request thread</li>
+ * <li>write-behind - the messages are put on a bounded queue and a single writer thread saves them
+ * in batches, waiting at most max-linger for a batch to fill. When the queue is full the messages are rejected.
+ * The caller is acknowledged either when the message is queued or when its batch is committed.
+ * Once the service is stopping, the new messages are rejected and the queued ones are written.</li>
+ * </ul>
+ * The inserts and commits are timed as the persist stage, once per transaction.
+ * The partitions the messages go to are created before the transaction if they are missing.
+ * The palindrome aggregates count the messages once they are persisted, see PalindromeStatsService.
+ */
+@Service
+public class MessageIngestService {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageIngestService.class);
+
+    public enum Mode {
+        SYNC, WRITE_BEHIND
+    }
+
+    public enum Ack {
+        ENQUEUE, COMMIT
+    }
+
+    private MessageRepository messageRepository;
+    private MessageBroadcaster messageBroadcaster;
+    private MessagePageCache messagePageCache;
+    private MessageWriteVersion writeVersion;
+    private MessagePartitionManager partitionManager;
+    private PalindromeStatsService palindromeStatsService;
+    private TransactionTemplate transactionTemplate;
+
+    private PalindromeService palindromeService;
+
+    private Mode mode;
+    private Ack ack;
+    private int batchSize;
+    private long maxLingerNanos;
+
+    private Timer persistTimer;
+    private DistributionSummary persistBatchSize;
+
+    private BlockingQueue<PendingMessage> queue;
+    private Thread writer;
+    private volatile boolean running;
+
+    // The messages are queued under the read lock, stop() takes the write lock: nothing is queued once it is stopping
+    private final ReadWriteLock runningLock = new ReentrantReadWriteLock();
+
+    @Autowired
+    public MessageIngestService(MessageRepository messageRepository,
+                                MessageBroadcaster messageBroadcaster,
+                                MessagePageCache messagePageCache,
+                                MessageWriteVersion writeVersion,
+                                MessagePartitionManager partitionManager,
+                                PalindromeStatsService palindromeStatsService,
+                                PalindromeService palindromeService,
+                                PlatformTransactionManager transactionManager,
+                                MeterRegistry meterRegistry,
+                                @Value("${messages.ingest.mode:sync}") Mode mode,
+                                @Value("${messages.ingest.ack:commit}") Ack ack,
+                                @Value("${messages.ingest.queue-capacity:10000}") int queueCapacity,
+                                @Value("${messages.ingest.batch-size:100}") int batchSize,
+                                @Value("${messages.ingest.max-linger-ms:10}") long maxLingerMs) {
+        this.messageRepository = messageRepository;
+        this.messageBroadcaster = messageBroadcaster;
+        this.messagePageCache = messagePageCache;
+        this.writeVersion = writeVersion;
+        this.partitionManager = partitionManager;
+        this.palindromeStatsService = palindromeStatsService;
+        this.palindromeService = palindromeService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.mode = mode;
+        this.ack = ack;
+        this.batchSize = batchSize;
+        this.maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(maxLingerMs);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.persistTimer = StageTimers.timer(meterRegistry, StageTimers.PERSIST);
+        this.persistBatchSize = DistributionSummary.builder("messages.persist.batch.size")
+                .description("Messages persisted per transaction")
+                .register(meterRegistry);
+        Gauge.builder("messages.ingest.queue", queue, BlockingQueue::size)
+                .description("Messages waiting for the write-behind writer")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (mode == Mode.WRITE_BEHIND) {
+            running = true;
+            writer = new Thread(this::writeLoop, "message-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer != null) {
+            runningLock.writeLock().lock();
+            try {
+                running = false;
+            } finally {
+                runningLock.writeLock().unlock();
+            }
+            // The writer empties the queue before it exits
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+
+            List<PendingMessage> unwritten = new ArrayList<>();
+            queue.drainTo(unwritten);
+            if (!unwritten.isEmpty()) {
+                log.error("The message writer did not stop in time, {} queued messages are not persisted", unwritten.size());
+                completeUnfinished(unwritten, new IllegalStateException("The message writer is stopped"));
+            }
+        }
+    }
+
+    /**
+     * Persisting and broadcasting a validated message.
+     * The longest palindrome size is computed here, once per message.
+     *
+     * @param message valid message
+     * @return future completed when the message is acknowledged, with the JSON of the message as it was broadcast,
+     * or with null when it is acknowledged on enqueue
+     * @throws IngestQueueFullException in write-behind mode, when there is no space for the message
+     *                                  or the service is stopping
+     */
+    public CompletableFuture<byte[]> ingest(Message message) {
+        message.setLongestPalindromeSize(palindromeService.longestPalindromeSize(message.getContent()));
+
+        if (mode == Mode.SYNC) {
+            persist(Collections.singletonList(message));
+            return CompletableFuture.completedFuture(messageBroadcaster.broadcast(message));
+        }
+
+        PendingMessage pending = new PendingMessage(message);
+        runningLock.readLock().lock();
+        try {
+            if (!running) {
+                throw new IngestQueueFullException("The message writer is stopped");
+            }
+            if (!queue.offer(pending)) {
+                throw new IngestQueueFullException();
+            }
+        } finally {
+            runningLock.readLock().unlock();
+        }
+        return ack == Ack.ENQUEUE ? CompletableFuture.completedFuture(null) : pending.future;
+    }
+
+    /**
+     * Persisting a batch of validated messages in one transaction and broadcasting them once it is committed.
+     * It does not go through the write-behind queue, the batch is persisted by the calling thread.
+     *
+     * @param messages valid messages
+     */
+    public void ingestBatch(List<Message> messages) {
+        for (Message message : messages) {
+            message.setLongestPalindromeSize(palindromeService.longestPalindromeSize(message.getContent()));
+        }
+        persist(messages);
+        messageBroadcaster.broadcastBatch(messages);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return true if the messages are acknowledged before they are persisted
+     */
+    public boolean isAcknowledgedOnEnqueue() {
+        return mode == Mode.WRITE_BEHIND && ack == Ack.ENQUEUE;
+    }
+
+    private void writeLoop() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fillBatch(batch);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Unexpected error in the message writer", e);
+            } finally {
+                // The callers waiting for the commit never wait in vain
+                completeUnfinished(batch, new IllegalStateException("The message writer failed"));
+                batch.clear();
+            }
+        }
+    }
+
+    // Takes the messages already queued and waits for more until the batch is full or the linger time is over
+    private void fillBatch(List<PendingMessage> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxLingerNanos;
+        while (batch.size() < batchSize) {
+            if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void write(List<PendingMessage> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) {
+            messages.add(pending.message);
+        }
+
+        try {
+            persist(messages);
+        } catch (RuntimeException e) {
+            log.error("Failed to persist a batch of {} messages", messages.size(), e);
+            for (PendingMessage pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        // The messages of a batch are broadcast together, only after the batch is committed
+        for (PendingMessage pending : batch) {
+            byte[] json;
+            try {
+                json = messageBroadcaster.broadcast(pending.message);
+            } catch (RuntimeException e) {
+                // The message is persisted, only its broadcast is lost
+                log.error("Failed to broadcast the persisted message {}", pending.message.getId(), e);
+                json = messageBroadcaster.encode(pending.message);
+            }
+            pending.future.complete(json);
+        }
+    }
+
+    private static void completeUnfinished(List<PendingMessage> batch, RuntimeException cause) {
+        for (PendingMessage pending : batch) {
+            pending.future.completeExceptionally(cause);
+        }
+    }
+
+    private void persist(List<Message> messages) {
+        partitionManager.ensurePartitions(messages);
+
+        // The ids come from the pooled sequence, so Hibernate sends the inserts as JDBC batches
+        long start = System.nanoTime();
+        transactionTemplate.execute(status -> {
+            messageRepository.saveAll(messages);
+            messageRepository.flush();
+            return null;
+        });
+        persistTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        persistBatchSize.record(messages.size());
+        palindromeStatsService.record(messages);
+        // The pages are invalidated first, a request seeing the new version never gets a page cached before it
+        messagePageCache.onPersisted(messages);
+        writeVersion.increment();
+    }
+
+    private static class PendingMessage {
+
+        private final Message message;
+
+        private final CompletableFuture<byte[]> future = new CompletableFuture<>();
+
+        private PendingMessage(Message message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package io.falcon.assignment.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.falcon.assignment.model.dto.MessagePage;
+import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.model.repository.MessageCursor;
+import io.falcon.assignment.model.repository.MessageQuery;
+import io.falcon.assignment.model.repository.MessageRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of the pages of messages.
+ * <p>
+ * The pages are bounded by the total number of messages they hold and expire after a fixed time.
+ * When messages are persisted, only the pages they could belong to are invalidated: a message outside of
+ * the filters of a page, or after the last message of a full page, does not change it.
+ * The cached queries are indexed by the timestamp their page ends at (the last message of a full page, the end of
+ * the time range or never for the others), so a commit only checks the pages ending at or after its oldest message
+ * instead of every cached page: the new messages mostly go after the full pages.
+ * In cluster mode the broadcasts of the other nodes invalidate the pages of their messages. The messages persisted
+ * by other nodes outside of cluster mode, or directly through the repository, are seen once the pages expire.
+ * <p>
+ * The hit / miss / eviction metrics are the cache.* metrics tagged with cache=messages.page
+ */
+@Service
+public class MessagePageCache {
+
+    private MessageRepository messageRepository;
+
+    private Cache<MessageQuery, MessagePage> pages;
+
+    private boolean enabled;
+
+    // Incremented before the pages are invalidated, a page loaded meanwhile is not cached
+    private final AtomicLong version = new AtomicLong();
+
+    // The cached queries by the end of their page, in epoch millis
+    private final ConcurrentSkipListMap<Long, Set<MessageQuery>> queriesByEnd = new ConcurrentSkipListMap<>();
+
+    @Autowired
+    public MessagePageCache(MessageRepository messageRepository, MeterRegistry meterRegistry,
+                            @Value("${messages.cache.enabled:true}") boolean enabled,
+                            @Value("${messages.cache.max-messages:100000}") long maxMessages,
+                            @Value("${messages.cache.expire-after-write-ms:10000}") long expireAfterWriteMs) {
+        this.messageRepository = messageRepository;
+        this.enabled = enabled;
+        this.pages = Caffeine.newBuilder()
+                .maximumWeight(maxMessages)
+                .<MessageQuery, MessagePage>weigher((query, page) -> Math.max(1, page.getMessages().size()))
+                .expireAfterWrite(expireAfterWriteMs, TimeUnit.MILLISECONDS)
+                // The index is updated by the thread removing the page, before the page of a reload is indexed
+                .executor(Runnable::run)
+                .removalListener((MessageQuery query, MessagePage page, RemovalCause cause) -> unindex(query, page))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, pages, "messages.page");
+    }
+
+    /**
+     * The page of messages of a query, from the cache or from the database
+     *
+     * @param query the filters, position and size of the page
+     * @return the page
+     */
+    public MessagePage getPage(MessageQuery query) {
+        if (!enabled) {
+            return load(query);
+        }
+
+        MessagePage page = pages.getIfPresent(query);
+        if (page != null) {
+            return page;
+        }
+
+        long loadedAt = version.get();
+        page = load(query);
+        if (version.get() == loadedAt) {
+            pages.put(query, page);
+            index(query, page);
+            // Invalidated while it was put
+            if (version.get() != loadedAt) {
+                pages.invalidate(query);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Invalidating the pages the persisted messages could belong to
+     *
+     * @param messages messages just committed
+     */
+    public void onPersisted(Collection<Message> messages) {
+        if (!enabled) {
+            return;
+        }
+        version.incrementAndGet();
+        long earliest = Long.MAX_VALUE;
+        for (Message message : messages) {
+            earliest = Math.min(earliest, message.getTimestampValue().getTime());
+        }
+        // The pages ending before the oldest message can't change
+        for (Map.Entry<Long, Set<MessageQuery>> ending : queriesByEnd.tailMap(earliest, true).entrySet()) {
+            for (MessageQuery query : ending.getValue()) {
+                // Without recording a cache hit
+                MessagePage page = pages.asMap().get(query);
+                if (page == null) {
+                    removeStale(ending.getKey(), query);
+                    continue;
+                }
+                for (Message message : messages) {
+                    if (affects(query, page, message)) {
+                        pages.invalidate(query);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    // The stored messages changed without going through the ingest path
+    public void invalidateAll() {
+        version.incrementAndGet();
+        pages.invalidateAll();
+    }
+
+    private void index(MessageQuery query, MessagePage page) {
+        queriesByEnd.compute(end(query, page), (end, queries) -> {
+            Set<MessageQuery> indexed = queries == null ? ConcurrentHashMap.newKeySet() : queries;
+            indexed.add(query);
+            return indexed;
+        });
+    }
+
+    private void unindex(MessageQuery query, MessagePage page) {
+        if (query != null && page != null) {
+            unindex(end(query, page), query);
+        }
+    }
+
+    private void unindex(long end, MessageQuery query) {
+        queriesByEnd.computeIfPresent(end, (key, queries) -> {
+            queries.remove(query);
+            return queries.isEmpty() ? null : queries;
+        });
+    }
+
+    // A query left in the index by a page removed before it was indexed, indexed again if it was cached meanwhile
+    private void removeStale(long end, MessageQuery query) {
+        unindex(end, query);
+        MessagePage page = pages.asMap().get(query);
+        if (page != null) {
+            index(query, page);
+        }
+    }
+
+    // The time no message after which can change the page
+    private static long end(MessageQuery query, MessagePage page) {
+        if (page.getNextCursor() != null) {
+            List<Message> messages = page.getMessages();
+            return messages.get(messages.size() - 1).getTimestampValue().getTime();
+        }
+        return query.getTo() == null ? Long.MAX_VALUE : query.getTo().getTime();
+    }
+
+    private MessagePage load(MessageQuery query) {
+        // One message more than the limit tells if there is a next page
+        List<Message> messages = messageRepository.findPage(query.withLimit(query.getLimit() + 1));
+        return MessagePage.of(messages, query.getLimit());
+    }
+
+    private static boolean affects(MessageQuery query, MessagePage page, Message message) {
+        if (!query.matches(message)) {
+            return false;
+        }
+        // A full page only changes if the message comes before its last one
+        List<Message> messages = page.getMessages();
+        return page.getNextCursor() == null
+                || !MessageCursor.of(messages.get(messages.size() - 1)).precedes(message);
+    }
+}
@@ -0,0 +1,423 @@
+package io.falcon.assignment.service;
+
+import io.falcon.assignment.model.entity.Message;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Creates and drops the partitions of the messages table, which is partitioned by range of timestamp.
+ * <p>
+ * The archive partition holds every timestamp before the first partition of an interval (a day or a month).
+ * The partitions of the current interval and of the next "premake" ones are created ahead of time, the future
+ * partition holds every timestamp after them, up to MAXVALUE. A message with a timestamp that no partition covers,
+ * in a gap between the partitions, gets the partition of its interval created before it is inserted
+ * (see {@link #ensurePartitions(Collection)}). The timestamps chosen by the clients never create more than that:
+ * the ones after the premade partitions go to the future partition, which the maintenance splits when the time
+ * comes, creating the partitions of its rows and moving them.
+ * <p>
+ * With a retention, the partitions older than "retention" intervals are dropped, a DROP TABLE each instead of
+ * deleting the rows one by one. The archive is then recreated empty, it only holds timestamps out of the retention.
+ * The palindrome aggregates of the dropped messages are deleted with them.
+ * <p>
+ * The partitions are known from the database catalog, so the nodes of a cluster can share the table.
+ * The changes are serialized between the nodes with an advisory lock. The partitions in memory are changed along
+ * with the catalog, they are reloaded when the transaction fails.
+ * PostgreSQL 10 has no indexes on partitioned tables, every partition gets its own primary key and indexes.
+ */
+@Component
+public class MessagePartitionManager {
+
+    private static final Logger log = LoggerFactory.getLogger(MessagePartitionManager.class);
+
+    public static final String ARCHIVE = "messages_archive";
+
+    public static final String FUTURE = "messages_future";
+
+    // Serializes the partition changes of all the nodes
+    private static final long LOCK_KEY = 0x6d657373616765L;
+
+    private static final Pattern BOUNDS = Pattern.compile("FOR VALUES FROM \\((.+)\\) TO \\((.+)\\)");
+    private static final DateTimeFormatter BOUND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss[.SSSSSS]");
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    public enum Interval {
+        DAY, MONTH;
+
+        public LocalDateTime start(LocalDateTime timestamp) {
+            LocalDateTime day = timestamp.truncatedTo(ChronoUnit.DAYS);
+            return this == DAY ? day : day.withDayOfMonth(1);
+        }
+
+        public LocalDateTime plus(LocalDateTime start, long intervals) {
+            return this == DAY ? start.plusDays(intervals) : start.plusMonths(intervals);
+        }
+    }
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private MessagePageCache messagePageCache;
+    private MessageWriteVersion writeVersion;
+    private PalindromeStatsService palindromeStatsService;
+
+    private Interval interval;
+    private int premake;
+    private int retention;
+
+    // The partitions by lower bound, the archive has none (LocalDateTime.MIN)
+    private final NavigableMap<LocalDateTime, Partition> partitions = new ConcurrentSkipListMap<>();
+
+    @Autowired
+    public MessagePartitionManager(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                   MessagePageCache messagePageCache, MessageWriteVersion writeVersion,
+                                   PalindromeStatsService palindromeStatsService,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${messages.partitioning.interval:month}") Interval interval,
+                                   @Value("${messages.partitioning.premake:2}") int premake,
+                                   @Value("${messages.partitioning.retention:0}") int retention) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.messagePageCache = messagePageCache;
+        this.writeVersion = writeVersion;
+        this.palindromeStatsService = palindromeStatsService;
+        this.interval = interval;
+        this.premake = premake;
+        this.retention = retention;
+
+        Gauge.builder("messages.partitions", partitions, Map::size)
+                .description("Partitions of the messages table")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${messages.partitioning.maintenance-delay-ms:3600000}")
+    public void run() {
+        try {
+            maintain(LocalDateTime.now());
+        } catch (RuntimeException e) {
+            log.error("Failed to maintain the partitions of the messages", e);
+        }
+    }
+
+    /**
+     * Creating the partitions up to "premake" intervals after the current one and dropping the ones out of
+     * the retention
+     *
+     * @param now the current time
+     */
+    public void maintain(LocalDateTime now) {
+        LocalDateTime current = interval.start(now);
+        LocalDateTime horizon = horizon(now);
+        List<String> dropped = new ArrayList<>();
+        change(() -> {
+            lock();
+            load();
+            Partition future = detachFuture(horizon);
+            for (int i = 0; i <= premake; i++) {
+                createIfMissing(interval.plus(current, i));
+            }
+            attachFuture(future, horizon);
+            if (retention > 0) {
+                dropExpired(interval.plus(current, -retention), dropped);
+            }
+        });
+
+        if (!dropped.isEmpty()) {
+            log.info("Dropped the partitions out of the retention: {}", dropped);
+            messagePageCache.invalidateAll();
+            writeVersion.increment();
+        }
+    }
+
+    /**
+     * Making sure that every message has a partition to be inserted to.
+     * It has to be called before the transaction inserting the messages, creating a partition locks the whole table.
+     *
+     * @param messages messages about to be inserted
+     */
+    public void ensurePartitions(Collection<Message> messages) {
+        LocalDateTime horizon = horizon(LocalDateTime.now());
+        List<LocalDateTime> missing = null;
+        for (Message message : messages) {
+            LocalDateTime timestamp = message.getTimestampValue().toLocalDateTime();
+            if (!isCovered(timestamp)) {
+                if (missing == null) {
+                    missing = new ArrayList<>();
+                }
+                missing.add(timestamp);
+            }
+        }
+        if (missing == null) {
+            return;
+        }
+
+        List<LocalDateTime> timestamps = missing;
+        change(() -> {
+            lock();
+            // Another node may have created them in the meantime
+            load();
+            for (LocalDateTime timestamp : timestamps) {
+                if (!timestamp.isBefore(horizon) && !hasFuture()) {
+                    createFuture(horizon);
+                }
+                createIfMissing(timestamp);
+            }
+        });
+    }
+
+    /**
+     * Reloading the partitions from the database catalog
+     */
+    public void refresh() {
+        transactionTemplate.execute(status -> {
+            load();
+            return null;
+        });
+    }
+
+    public List<Partition> getPartitions() {
+        return new ArrayList<>(partitions.values());
+    }
+
+    // Changing the partitions in a transaction, the rolled back changes are undone in memory by reloading them
+    private void change(Runnable changes) {
+        try {
+            transactionTemplate.execute(status -> {
+                changes.run();
+                return null;
+            });
+        } catch (RuntimeException e) {
+            try {
+                refresh();
+            } catch (RuntimeException reload) {
+                e.addSuppressed(reload);
+            }
+            throw e;
+        }
+    }
+
+    // The end of the premade partitions
+    private LocalDateTime horizon(LocalDateTime now) {
+        return interval.plus(interval.start(now), premake + 1);
+    }
+
+    private boolean isCovered(LocalDateTime timestamp) {
+        Map.Entry<LocalDateTime, Partition> floor = partitions.floorEntry(timestamp);
+        return floor != null && timestamp.isBefore(floor.getValue().upper);
+    }
+
+    private void lock() {
+        jdbcTemplate.execute("SELECT pg_advisory_xact_lock(" + LOCK_KEY + ")");
+    }
+
+    private void load() {
+        List<Partition> loaded = jdbcTemplate.query(
+                "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) FROM pg_inherits i "
+                        + "JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = 'messages'::regclass",
+                (rs, rowNum) -> Partition.parse(rs.getString(1), rs.getString(2)));
+        partitions.clear();
+        for (Partition partition : loaded) {
+            partitions.put(partition.lower, partition);
+        }
+    }
+
+    // Creating the partition of the interval of the timestamp, without overlapping the existing partitions
+    private void createIfMissing(LocalDateTime timestamp) {
+        if (isCovered(timestamp)) {
+            return;
+        }
+        LocalDateTime lower = interval.start(timestamp);
+        LocalDateTime upper = interval.plus(lower, 1);
+        Map.Entry<LocalDateTime, Partition> previous = partitions.floorEntry(timestamp);
+        if (previous != null && previous.getValue().upper.isAfter(lower)) {
+            lower = previous.getValue().upper;
+        }
+        Map.Entry<LocalDateTime, Partition> next = partitions.higherEntry(timestamp);
+        if (next != null && next.getKey().isBefore(upper)) {
+            upper = next.getKey();
+        }
+        create(new Partition("messages_p" + NAME_FORMAT.format(lower), lower, upper));
+    }
+
+    private void create(Partition partition) {
+        String name = partition.name;
+        jdbcTemplate.execute("CREATE TABLE " + name + " PARTITION OF messages FOR VALUES FROM ("
+                + partition.lowerBound() + ") TO (" + partition.upperBound() + ")");
+        jdbcTemplate.execute("ALTER TABLE " + name + " ADD CONSTRAINT " + name + "_pkey PRIMARY KEY (id)");
+        jdbcTemplate.execute("CREATE INDEX " + name + "_timestamp_id_idx ON " + name + " (timestamp, id)");
+        jdbcTemplate.execute("CREATE INDEX " + name + "_backfill_idx ON " + name
+                + " (id) WHERE longest_palindrome_size IS NULL");
+        jdbcTemplate.execute("CREATE INDEX " + name + "_content_trgm_idx ON " + name
+                + " USING gin (content gin_trgm_ops)");
+        jdbcTemplate.execute("CREATE INDEX " + name + "_palindrome_idx ON " + name + " (longest_palindrome_size)");
+        partitions.put(partition.lower, partition);
+        log.info("Created the partition {} for [{}, {})", name, partition.lowerBound(), partition.upperBound());
+    }
+
+    private boolean hasFuture() {
+        return !partitions.isEmpty() && partitions.lastEntry().getValue().isFuture();
+    }
+
+    // The future partition starts at the horizon, or after the partitions created past it before it existed
+    private void createFuture(LocalDateTime horizon) {
+        LocalDateTime lower = horizon;
+        if (!partitions.isEmpty() && partitions.lastEntry().getValue().upper.isAfter(lower)) {
+            lower = partitions.lastEntry().getValue().upper;
+        }
+        create(new Partition(FUTURE, lower, LocalDateTime.MAX));
+    }
+
+    /**
+     * Detaching the future partition when the horizon moved into it, the partitions of its rows before the horizon
+     * are created. The intervals without rows are left to the premade partitions and to the gaps.
+     *
+     * @return the detached partition, null if it was not detached
+     */
+    private Partition detachFuture(LocalDateTime horizon) {
+        if (!hasFuture() || !partitions.lastKey().isBefore(horizon)) {
+            return null;
+        }
+        Partition future = partitions.remove(partitions.lastKey());
+        jdbcTemplate.execute("ALTER TABLE messages DETACH PARTITION " + FUTURE);
+        List<Timestamp> starts = jdbcTemplate.queryForList("SELECT DISTINCT date_trunc('"
+                        + interval.name().toLowerCase() + "', timestamp) FROM " + FUTURE + " WHERE timestamp < ?",
+                Timestamp.class, Timestamp.valueOf(horizon));
+        for (Timestamp start : starts) {
+            createIfMissing(start.toLocalDateTime());
+        }
+        return future;
+    }
+
+    // Moving the rows before the horizon to their partitions and attaching the future partition after them
+    private void attachFuture(Partition future, LocalDateTime horizon) {
+        if (future == null) {
+            if (!hasFuture()) {
+                createFuture(horizon);
+            }
+            return;
+        }
+        Timestamp bound = Timestamp.valueOf(horizon);
+        int moved = jdbcTemplate.update("INSERT INTO messages SELECT * FROM " + FUTURE + " WHERE timestamp < ?", bound);
+        jdbcTemplate.update("DELETE FROM " + FUTURE + " WHERE timestamp < ?", bound);
+        jdbcTemplate.execute("ALTER TABLE messages ATTACH PARTITION " + FUTURE + " FOR VALUES FROM ('"
+                + BOUND_FORMAT.format(horizon) + "') TO (MAXVALUE)");
+        partitions.put(horizon, new Partition(FUTURE, horizon, LocalDateTime.MAX));
+        log.info("Moved the future partition to {}, {} messages moved to their partitions", horizon, moved);
+    }
+
+    // Dropping the partitions entirely before the cutoff, the archive is replaced by an empty one
+    private void dropExpired(LocalDateTime cutoff, List<String> dropped) {
+        Partition archive = null;
+        for (Partition partition : new ArrayList<>(partitions.values())) {
+            if (partition.upper.isAfter(cutoff)) {
+                continue;
+            }
+            jdbcTemplate.execute("DROP TABLE " + partition.name);
+            partitions.remove(partition.lower);
+            dropped.add(partition.name);
+            if (partition.isArchive()) {
+                archive = partition;
+            }
+        }
+
+        if (!dropped.isEmpty()) {
+            palindromeStatsService.deleteBefore(cutoff);
+        }
+
+        if (archive != null) {
+            LocalDateTime upper = partitions.isEmpty() || partitions.firstKey().isAfter(cutoff)
+                    ? cutoff : partitions.firstKey();
+            create(new Partition(ARCHIVE, LocalDateTime.MIN, upper));
+        }
+    }
+
+    /**
+     * A partition and its range of timestamps, from lower (included) to upper (excluded)
+     */
+    public static class Partition {
+
+        private final String name;
+
+        private final LocalDateTime lower;
+
+        private final LocalDateTime upper;
+
+        Partition(String name, LocalDateTime lower, LocalDateTime upper) {
+            this.name = name;
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        static Partition parse(String name, String bounds) {
+            Matcher matcher = BOUNDS.matcher(bounds);
+            if (!matcher.find()) {
+                throw new IllegalStateException("Unexpected bounds of the partition " + name + ": " + bounds);
+            }
+            return new Partition(name, parseBound(matcher.group(1)), parseBound(matcher.group(2)));
+        }
+
+        private static LocalDateTime parseBound(String bound) {
+            if (bound.equals("MINVALUE")) {
+                return LocalDateTime.MIN;
+            }
+            if (bound.equals("MAXVALUE")) {
+                return LocalDateTime.MAX;
+            }
+            return LocalDateTime.parse(bound.replace("'", ""), BOUND_FORMAT);
+        }
+
+        private String lowerBound() {
+            return isArchive() ? "MINVALUE" : "'" + BOUND_FORMAT.format(lower) + "'";
+        }
+
+        private String upperBound() {
+            return isFuture() ? "MAXVALUE" : "'" + BOUND_FORMAT.format(upper) + "'";
+        }
+
+        public boolean isArchive() {
+            return lower.equals(LocalDateTime.MIN);
+        }
+
+        public boolean isFuture() {
+            return upper.equals(LocalDateTime.MAX);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public LocalDateTime getLower() {
+            return lower;
+        }
+
+        public LocalDateTime getUpper() {
+            return upper;
+        }
+    }
+}
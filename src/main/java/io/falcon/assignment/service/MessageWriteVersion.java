@@ -0,0 +1,54 @@
+package io.falcon.assignment.service;
+
+import io.falcon.assignment.service.cluster.MessageHighWaterMark;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The version of the stored messages as seen by this node, the validator of the conditional GETs of the listings.
+ * <p>
+ * It is incremented after every commit of the ingest path, after the backfill and the partition drops changed
+ * the stored messages, and in cluster mode when a broadcast of another node is received. It is read before
+ * the messages are, and incremented after the cached pages are invalidated, so a response is never tagged
+ * with a version newer than its content.
+ * The ETag also holds a random epoch of the node: the versions of another node, or of a previous run,
+ * never match. The messages written directly through the repository are not seen.
+ * In cluster mode the ETag also holds the high-water mark of the database, for the broadcasts of the other nodes
+ * that never arrived.
+ */
+@Component
+public class MessageWriteVersion {
+
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+    private final AtomicLong version = new AtomicLong();
+
+    // Only available in cluster mode
+    private MessageHighWaterMark highWaterMark;
+
+    @Autowired(required = false)
+    public void setHighWaterMark(MessageHighWaterMark highWaterMark) {
+        this.highWaterMark = highWaterMark;
+    }
+
+    // The stored messages changed
+    public void increment() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * A weak ETag, the same messages are sent in JSON or Smile, with or without gzip
+     *
+     * @return the ETag of the current version
+     */
+    public String getETag() {
+        long current = version.get();
+        if (highWaterMark == null) {
+            return "W/\"" + epoch + '-' + current + '"';
+        }
+        return "W/\"" + epoch + '-' + current + '-' + highWaterMark.get() + '"';
+    }
+}
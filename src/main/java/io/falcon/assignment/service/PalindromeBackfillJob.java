@@ -0,0 +1,104 @@
+package io.falcon.assignment.service;
+
+import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.model.repository.MessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Background job filling the longest palindrome size of the messages persisted before it was stored with them.
+ * <p>
+ * Every run processes one batch in its own transaction, in id order. The job is resumable: the only state
+ * that matters is the missing column value in the database, so after a restart it continues with the rows
+ * that are still not filled. Once a full pass finds nothing to do the job stops querying the table.
+ * The filled messages are counted in the palindrome aggregates once the transaction is committed.
+ */
+@Component
+public class PalindromeBackfillJob {
+
+    private static final Logger log = LoggerFactory.getLogger(PalindromeBackfillJob.class);
+
+    private MessageRepository messageRepository;
+    private MessagePageCache messagePageCache;
+    private MessageWriteVersion writeVersion;
+    private PalindromeStatsService palindromeStatsService;
+    private TransactionTemplate transactionTemplate;
+
+    private PalindromeService palindromeService;
+
+    @Value("${messages.backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${messages.backfill.batch-size:500}")
+    private int batchSize;
+
+    // The last processed id, it only saves rescanning the rows that were already filled
+    private long lastId;
+
+    private volatile boolean finished;
+
+    @Autowired
+    public PalindromeBackfillJob(MessageRepository messageRepository, MessagePageCache messagePageCache,
+                                 MessageWriteVersion writeVersion, PalindromeStatsService palindromeStatsService,
+                                 PalindromeService palindromeService, PlatformTransactionManager transactionManager) {
+        this.messageRepository = messageRepository;
+        this.messagePageCache = messagePageCache;
+        this.writeVersion = writeVersion;
+        this.palindromeStatsService = palindromeStatsService;
+        this.palindromeService = palindromeService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(initialDelayString = "${messages.backfill.initial-delay-ms:10000}",
+            fixedDelayString = "${messages.backfill.delay-ms:1000}")
+    public void run() {
+        if (!enabled || finished) {
+            return;
+        }
+
+        int processed = backfillBatch();
+        if (processed < batchSize) {
+            finished = true;
+            log.info("Longest palindrome size backfill finished");
+        }
+    }
+
+    /**
+     * Computes and stores the longest palindrome size for the next batch of messages without it
+     *
+     * @return the number of messages processed
+     */
+    public int backfillBatch() {
+        List<Message> batch = transactionTemplate.execute(status -> {
+            List<Message> messages = messageRepository.findWithoutLongestPalindromeSize(lastId, PageRequest.of(0, batchSize));
+            for (Message message : messages) {
+                // Messages are managed entities, the changes are flushed on commit
+                message.setLongestPalindromeSize(palindromeService.longestPalindromeSize(message.getContent()));
+            }
+            return messages;
+        });
+        if (batch == null || batch.isEmpty()) {
+            return 0;
+        }
+
+        lastId = batch.get(batch.size() - 1).getId();
+        palindromeStatsService.record(batch);
+        // The cached pages and the listings the clients hold have the messages without the size
+        messagePageCache.invalidateAll();
+        writeVersion.increment();
+        return batch.size();
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+}
@@ -0,0 +1,65 @@
+package io.falcon.assignment.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.falcon.assignment.utils.LongestPalindromeSize;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The longest palindrome size of the message contents, memoized.
+ * <p>
+ * The same contents come again and again (bots, templates, retries), so the results are kept in a bounded
+ * concurrent cache keyed by the letters of the content, the only characters the computation looks at.
+ * Contents differing only in spaces or punctuation share an entry. When the cache is full the entries
+ * least likely to be used again are evicted (Caffeine's W-TinyLFU policy).
+ * <p>
+ * The hit / miss / eviction metrics are the cache.* metrics tagged with cache=palindrome.memo,
+ * the time of the lookups and computations is the compute stage timer.
+ */
+@Service
+public class PalindromeService {
+
+    private LongestPalindromeSize longestPalindromeSize = new LongestPalindromeSize();
+
+    // Null when the memo is disabled
+    private Cache<String, Integer> memo;
+
+    private Timer computeTimer;
+
+    @Autowired
+    public PalindromeService(MeterRegistry meterRegistry,
+                             @Value("${messages.palindrome.memo.enabled:true}") boolean enabled,
+                             @Value("${messages.palindrome.memo.max-size:10000}") long maxSize) {
+        this.computeTimer = StageTimers.timer(meterRegistry, StageTimers.COMPUTE);
+        if (enabled) {
+            this.memo = Caffeine.newBuilder()
+                    .maximumSize(maxSize)
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, memo, "palindrome.memo");
+        }
+    }
+
+    /**
+     * @param content the content of a message, can be null
+     * @return the size of the longest palindrome of letters in the content, null if there is no content
+     */
+    public Integer longestPalindromeSize(String content) {
+        if (content == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        Integer size = memo == null
+                ? longestPalindromeSize.longestPalindromicSubstringLinear(content)
+                : memo.get(longestPalindromeSize.letters(content), longestPalindromeSize::longestPalindromicSubstringLinear);
+        computeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return size;
+    }
+}
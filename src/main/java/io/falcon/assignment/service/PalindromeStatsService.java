@@ -0,0 +1,227 @@
+package io.falcon.assignment.service;
+
+import io.falcon.assignment.model.dto.PalindromeStats;
+import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.utils.TimestampCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Incrementally maintained aggregates of the longest palindrome sizes.
+ * <p>
+ * The table message_palindrome_stats counts the messages per hour and longest palindrome size. The committed
+ * messages are counted in memory and the counts are added to the table every flush-delay-ms, by one writer in its own
+ * short transaction: the transactions persisting the messages do not lock the rows of the busy hours.
+ * The aggregates lag the messages by up to flush-delay-ms, the counts not flushed yet are lost if the node crashes.
+ * The aggregates are computed from the counts, reading at most one row per hour and distinct size.
+ * <p>
+ * Only the messages persisted through the ingest path and the backfill are counted, the messages are counted
+ * once they have a longest palindrome size.
+ */
+@Service
+public class PalindromeStatsService {
+
+    public enum Granularity {
+        HOUR, DAY
+    }
+
+    // The keys are sorted, concurrent transactions lock the rows in the same order
+    private static final Comparator<StatsKey> KEY_ORDER = Comparator.<StatsKey, LocalDateTime>comparing(key -> key.bucket)
+            .thenComparingInt(key -> key.palindromeSize);
+
+    private static final Logger log = LoggerFactory.getLogger(PalindromeStatsService.class);
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    // The counts of the committed messages, not in the table yet
+    private final Map<StatsKey, Long> pending = new ConcurrentHashMap<>();
+
+    // Set while a transaction deleting the counts before it is in progress, the older counts are kept until it ends
+    private LocalDateTime deleting;
+
+    @Autowired
+    public PalindromeStatsService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Counting the messages in the aggregates, it has to be called once they are committed
+     *
+     * @param messages messages with their longest palindrome size
+     */
+    public void record(Collection<Message> messages) {
+        for (Message message : messages) {
+            if (message.getLongestPalindromeSize() == null) {
+                continue;
+            }
+            LocalDateTime bucket = message.getTimestampValue().toLocalDateTime().truncatedTo(ChronoUnit.HOURS);
+            pending.merge(new StatsKey(bucket, message.getLongestPalindromeSize()), 1L, Long::sum);
+        }
+    }
+
+    /**
+     * Adding the pending counts to the table, in one transaction
+     */
+    @Scheduled(initialDelayString = "${messages.stats.flush-delay-ms:1000}",
+            fixedDelayString = "${messages.stats.flush-delay-ms:1000}")
+    public synchronized void flush() {
+        // The keys are taken one by one, a count recorded meanwhile goes to the next flush
+        Map<StatsKey, Long> counts = new TreeMap<>(KEY_ORDER);
+        for (StatsKey key : pending.keySet()) {
+            if (deleting != null && key.bucket.isBefore(deleting)) {
+                continue;
+            }
+            Long count = pending.remove(key);
+            if (count != null) {
+                counts.put(key, count);
+            }
+        }
+        if (counts.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.execute(status -> {
+                write(counts);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.error("Failed to flush the palindrome aggregates of {} buckets, retrying on the next flush", counts.size(), e);
+            counts.forEach((key, count) -> pending.merge(key, count, Long::sum));
+        }
+    }
+
+    // The counts not flushed yet are written when the application stops
+    @PreDestroy
+    public void stop() {
+        flush();
+    }
+
+    private void write(Map<StatsKey, Long> counts) {
+        List<Object[]> rows = new ArrayList<>(counts.size());
+        for (Map.Entry<StatsKey, Long> count : counts.entrySet()) {
+            rows.add(new Object[]{Timestamp.valueOf(count.getKey().bucket), count.getKey().palindromeSize, count.getValue()});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO message_palindrome_stats (bucket, longest_palindrome_size, messages) "
+                + "VALUES (?, ?, ?) ON CONFLICT (bucket, longest_palindrome_size) "
+                + "DO UPDATE SET messages = message_palindrome_stats.messages + excluded.messages", rows);
+    }
+
+    /**
+     * The aggregates of the buckets starting in a time range
+     *
+     * @param from        the earliest start of the buckets (optional)
+     * @param to          the time the buckets start before (optional)
+     * @param granularity the size of the buckets
+     * @return the maximum and average size per bucket and the histogram of the sizes
+     */
+    public PalindromeStats getStats(Timestamp from, Timestamp to, Granularity granularity) {
+        List<Object> args = new ArrayList<>();
+        args.add(granularity.name().toLowerCase());
+        StringBuilder sql = new StringBuilder("SELECT date_trunc(?, bucket), longest_palindrome_size, sum(messages) "
+                + "FROM message_palindrome_stats WHERE true");
+        if (from != null) {
+            sql.append(" AND bucket >= ?");
+            args.add(from);
+        }
+        if (to != null) {
+            sql.append(" AND bucket < ?");
+            args.add(to);
+        }
+        sql.append(" GROUP BY 1, 2 ORDER BY 1, 2");
+
+        PalindromeStats stats = new PalindromeStats();
+        jdbcTemplate.query(sql.toString(), rs -> {
+            stats.add(TimestampCodec.format(rs.getTimestamp(1)), rs.getInt(2), rs.getLong(3));
+        }, args.toArray());
+        return stats;
+    }
+
+    /**
+     * Removing the counts of the messages before a time, when they are dropped.
+     * In a transaction, the counts not flushed yet are dropped once it commits, and flushed if it rolls back.
+     *
+     * @param cutoff the time the dropped messages are before
+     */
+    public synchronized void deleteBefore(LocalDateTime cutoff) {
+        deleting = cutoff;
+        try {
+            jdbcTemplate.update("DELETE FROM message_palindrome_stats WHERE bucket < ?", Timestamp.valueOf(cutoff));
+        } catch (RuntimeException e) {
+            deleting = null;
+            throw e;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    deleted(cutoff, status == TransactionSynchronization.STATUS_COMMITTED);
+                }
+            });
+        } else {
+            deleted(cutoff, true);
+        }
+    }
+
+    private synchronized void deleted(LocalDateTime cutoff, boolean committed) {
+        if (committed) {
+            pending.keySet().removeIf(key -> key.bucket.isBefore(cutoff));
+        }
+        deleting = null;
+    }
+
+    private static class StatsKey {
+
+        private final LocalDateTime bucket;
+
+        private final int palindromeSize;
+
+        private StatsKey(LocalDateTime bucket, int palindromeSize) {
+            this.bucket = bucket;
+            this.palindromeSize = palindromeSize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            StatsKey statsKey = (StatsKey) o;
+            return palindromeSize == statsKey.palindromeSize && bucket.equals(statsKey.bucket);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(bucket, palindromeSize);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package io.falcon.assignment.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free ring buffer of the last broadcast messages, with their sequence numbers and JSON.
+ * <p>
+ * The writers claim a slot with an atomic counter and overwrite the oldest entry, the readers never block them.
+ * The sequence numbers are the ones of the broadcasts (see BroadcastSequence). A reader takes every entry
+ * after the requested sequence number and sorts them, it does not rely on the order of the slots.
+ * The buffer covers a sequence number when no message after it was overwritten yet
+ * and it was not before the first message of the buffer (the ones before were broadcast before it existed).
+ */
+public class RecentMessageBuffer {
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+
+    private final AtomicLong next = new AtomicLong();
+
+    // The highest sequence number that is not in the buffer, NONE until the first message
+    private static final long NONE = Long.MIN_VALUE;
+    private final AtomicLong floor = new AtomicLong(NONE);
+
+    /**
+     * @param capacity the number of messages kept, rounded up to a power of two
+     */
+    public RecentMessageBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    public void add(long seq, byte[] json) {
+        floor.compareAndSet(NONE, seq - 1);
+        int slot = (int) (next.getAndIncrement() & mask);
+        Entry previous = slots.getAndSet(slot, new Entry(seq, json));
+        if (previous != null) {
+            floor.accumulateAndGet(previous.seq, Math::max);
+        }
+    }
+
+    /**
+     * The messages broadcast after a sequence number
+     *
+     * @param seq the last sequence number the reader has seen
+     * @return the entries with a higher sequence number, in sequence order,
+     * or null if some of them are no longer in the buffer
+     */
+    public List<Entry> after(long seq) {
+        if (!covers(seq)) {
+            return null;
+        }
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < slots.length(); i++) {
+            Entry entry = slots.get(i);
+            if (entry != null && entry.seq > seq) {
+                entries.add(entry);
+            }
+        }
+        // A slot could be overwritten while it was read
+        if (!covers(seq)) {
+            return null;
+        }
+        entries.sort(Comparator.comparingLong(Entry::getSeq));
+        return entries;
+    }
+
+    public boolean covers(long seq) {
+        long current = floor.get();
+        return current != NONE && seq >= current;
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    public static class Entry {
+
+        private final long seq;
+
+        private final byte[] json;
+
+        public Entry(long seq, byte[] json) {
+            this.seq = seq;
+            this.json = json;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+    }
+}
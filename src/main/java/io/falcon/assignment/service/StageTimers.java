@@ -0,0 +1,46 @@
+package io.falcon.assignment.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+
+/**
+ * The timers of the stages a message goes through: validation, compute (longest palindrome),
+ * persist, serialize and fanout (hand-off to the broker).
+ * <p>
+ * They are all the messages.stage timer, tagged with the stage. Every timer keeps a percentile histogram
+ * (HdrHistogram based), exported as buckets at /actuator/prometheus and as percentiles at /actuator/metrics.
+ * Recording a value costs a couple of atomic increments, there is no lock on the hot path.
+ */
+public final class StageTimers {
+
+    public static final String NAME = "messages.stage";
+
+    public static final String VALIDATION = "validation";
+    public static final String COMPUTE = "compute";
+    public static final String PERSIST = "persist";
+    public static final String SERIALIZE = "serialize";
+    public static final String FANOUT = "fanout";
+
+    private StageTimers() {
+    }
+
+    /**
+     * The timer of a stage, registered on first use
+     *
+     * @param meterRegistry the registry
+     * @param stage         the name of the stage
+     * @return the timer
+     */
+    public static Timer timer(MeterRegistry meterRegistry, String stage) {
+        return Timer.builder(NAME)
+                .description("Time spent by the messages in a stage of the ingest and broadcast path")
+                .tag("stage", stage)
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(meterRegistry);
+    }
+}
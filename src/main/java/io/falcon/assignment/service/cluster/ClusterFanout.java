@@ -0,0 +1,267 @@
+package io.falcon.assignment.service.cluster;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.service.MessagePageCache;
+import io.falcon.assignment.service.MessageWriteVersion;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fan-out of the broadcasts between the nodes of a cluster.
+ * <p>
+ * Every node sends its broadcasts to its own broker and publishes them on the cluster transport.
+ * The transport delivers them to every node, the nodes send the ones published by other nodes
+ * to their own brokers and skip their own. This way every client, whatever node it is connected to,
+ * gets every message exactly once.
+ * <p>
+ * An envelope is "origin\nsent-at\ncount\ndestination\nid\npayload", the payload is the JSON of the message
+ * and the id the one of the persisted message, 0 for the other broadcasts. The count numbers the envelopes
+ * of the origin: the receivers count the numbers they never got as lost (messages.cluster.relay.lost),
+ * e.g. the notifications sent while the PostgreSQL listener reconnects. The envelopes can arrive out of order,
+ * a number is only counted as lost once 64 later ones arrived. The numbers of an origin are forgotten once it sent
+ * nothing for origin-idle-ms, e.g. a node that was restarted under a new id: if it comes back, the numbers it sent
+ * meanwhile are not counted as lost. The received broadcasts go to
+ * the relay listener when one is set (the MessageBroadcaster, which numbers them), straight to the broker if not.
+ * The relay latency is the time between publishing and receiving the envelope, measured with the
+ * wall clock of the two nodes.
+ */
+public class ClusterFanout {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterFanout.class);
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final ClusterTransport transport;
+    private final SimpMessageSendingOperations messagingTemplate;
+    private final ObjectMapper objectMapper;
+    private final MessageWriteVersion writeVersion;
+    private final MessagePageCache messagePageCache;
+
+    private final Timer relayLatency;
+    private final Counter published;
+    private final Counter received;
+    private final Counter lost;
+
+    private final AtomicLong publishCount = new AtomicLong();
+
+    // The envelopes received from every other node, the idle ones are removed at most once per origin-idle-ms
+    private final Map<String, ReceivedWindow> receivedWindows = new ConcurrentHashMap<>();
+    private final long originIdleNanos;
+    private volatile long prunedAt = System.nanoTime();
+
+    private volatile RelayListener relayListener;
+
+    public ClusterFanout(ClusterTransport transport, SimpMessageSendingOperations messagingTemplate,
+                         ObjectMapper objectMapper, MessageWriteVersion writeVersion, MessagePageCache messagePageCache,
+                         MeterRegistry meterRegistry, long originIdleMs) {
+        this.transport = transport;
+        this.messagingTemplate = messagingTemplate;
+        this.objectMapper = objectMapper;
+        this.writeVersion = writeVersion;
+        this.messagePageCache = messagePageCache;
+        this.originIdleNanos = TimeUnit.MILLISECONDS.toNanos(originIdleMs);
+
+        this.relayLatency = Timer.builder("messages.cluster.relay.latency")
+                .description("Time between publishing a broadcast and receiving it on another node")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.published = Counter.builder("messages.cluster.relay.published").register(meterRegistry);
+        this.received = Counter.builder("messages.cluster.relay.received").register(meterRegistry);
+        this.lost = Counter.builder("messages.cluster.relay.lost")
+                .description("Broadcasts of the other nodes that never reached this node")
+                .register(meterRegistry);
+        Gauge.builder("messages.cluster.relay.origins", receivedWindows, Map::size)
+                .description("Other nodes whose broadcasts are numbered by this node")
+                .register(meterRegistry);
+
+        transport.setListener(this::receive);
+    }
+
+    /**
+     * Publishing a broadcast to the other nodes
+     *
+     * @param destination the destination of the broadcast
+     * @param payload     the payload, serialized to JSON
+     */
+    public void publish(String destination, Object payload) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(payload);
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize a broadcast for the cluster", e);
+            return;
+        }
+        publish(destination, json);
+    }
+
+    /**
+     * Publishing a broadcast already serialized to JSON to the other nodes
+     *
+     * @param destination the destination of the broadcast
+     * @param json        the UTF-8 JSON of the payload
+     */
+    public void publish(String destination, byte[] json) {
+        publish(destination, 0, json);
+    }
+
+    /**
+     * Publishing the broadcast of a persisted message to the other nodes
+     *
+     * @param destination the destination of the broadcast
+     * @param id          the id of the message
+     * @param json        the UTF-8 JSON of the message
+     */
+    public void publish(String destination, long id, byte[] json) {
+        transport.publish(nodeId + '\n' + System.currentTimeMillis() + '\n' + publishCount.incrementAndGet() + '\n'
+                + destination + '\n' + id + '\n' + new String(json, StandardCharsets.UTF_8));
+        published.increment();
+    }
+
+    private void receive(String envelope) {
+        int originEnd = envelope.indexOf('\n');
+        int sentAtEnd = envelope.indexOf('\n', originEnd + 1);
+        int countEnd = envelope.indexOf('\n', sentAtEnd + 1);
+        int destinationEnd = envelope.indexOf('\n', countEnd + 1);
+        int idEnd = envelope.indexOf('\n', destinationEnd + 1);
+        if (originEnd < 0 || sentAtEnd < 0 || countEnd < 0 || destinationEnd < 0 || idEnd < 0) {
+            log.warn("Ignoring an invalid cluster envelope");
+            return;
+        }
+
+        // This node already sent its own broadcasts to its clients
+        if (envelope.regionMatches(0, nodeId, 0, originEnd) && originEnd == nodeId.length()) {
+            return;
+        }
+
+        long sentAt = Long.parseLong(envelope.substring(originEnd + 1, sentAtEnd));
+        relayLatency.record(Math.max(0, System.currentTimeMillis() - sentAt), TimeUnit.MILLISECONDS);
+        received.increment();
+
+        long now = System.nanoTime();
+        pruneIdleOrigins(now);
+        long missed = receivedWindows.computeIfAbsent(envelope.substring(0, originEnd), origin -> new ReceivedWindow())
+                .receive(Long.parseLong(envelope.substring(sentAtEnd + 1, countEnd)), now);
+        if (missed > 0) {
+            log.warn("{} broadcasts of node {} never reached this node", missed, envelope.substring(0, originEnd));
+            lost.increment(missed);
+        }
+
+        String destination = envelope.substring(countEnd + 1, destinationEnd);
+        long id = Long.parseLong(envelope.substring(destinationEnd + 1, idEnd));
+        byte[] payload = envelope.substring(idEnd + 1).getBytes(StandardCharsets.UTF_8);
+
+        // The other node broadcasts the messages after committing them, the listings of this node changed:
+        // the cached pages go first, the new version must not be served with them
+        invalidatePages(id, payload);
+        writeVersion.increment();
+
+        RelayListener listener = relayListener;
+        if (listener != null) {
+            listener.relay(destination, id, payload);
+            return;
+        }
+
+        // The payload is already JSON, it is sent as it is
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        headers.setLeaveMutable(true);
+        messagingTemplate.send(destination, MessageBuilder.createMessage(payload, headers.getMessageHeaders()));
+    }
+
+    private void pruneIdleOrigins(long now) {
+        if (now - prunedAt < originIdleNanos) {
+            return;
+        }
+        prunedAt = now;
+        receivedWindows.values().removeIf(window -> now - window.receivedAt >= originIdleNanos);
+    }
+
+    // Only the pages the message belongs to, all of them when it can't be read
+    private void invalidatePages(long id, byte[] payload) {
+        if (id > 0) {
+            try {
+                Message message = objectMapper.readValue(payload, Message.class);
+                message.setId(id);
+                messagePageCache.onPersisted(Collections.singletonList(message));
+                return;
+            } catch (IOException e) {
+                log.warn("Failed to read a broadcast of another node, invalidating all the pages", e);
+            }
+        }
+        messagePageCache.invalidateAll();
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setRelayListener(RelayListener relayListener) {
+        this.relayListener = relayListener;
+    }
+
+    // The last 64 counts received from a node, the bit i is set when the count highest - i was received
+    static class ReceivedWindow {
+
+        private long highest;
+        private long received;
+
+        // System.nanoTime() of the last envelope
+        private volatile long receivedAt;
+
+        // Returns the number of counts that left the window without being received
+        synchronized long receive(long count, long now) {
+            receivedAt = now;
+            // The node was started before this one, the envelopes before its first one are not counted
+            if (highest == 0) {
+                highest = count;
+                received = -1L;
+                return 0;
+            }
+            if (count <= highest) {
+                if (highest - count < 64) {
+                    received |= 1L << (highest - count);
+                }
+                return 0;
+            }
+
+            long shift = count - highest;
+            long missed;
+            if (shift >= 64) {
+                missed = (64 - Long.bitCount(received)) + (shift - 64);
+                received = 1;
+            } else {
+                missed = Long.bitCount(~received & (-1L << (64 - shift)));
+                received = (received << shift) | 1;
+            }
+            highest = count;
+            return missed;
+        }
+    }
+
+    // Sends the broadcasts of the other nodes to the clients of this node
+    @FunctionalInterface
+    public interface RelayListener {
+
+        void relay(String destination, long id, byte[] json);
+    }
+}
@@ -0,0 +1,14 @@
+package io.falcon.assignment.service.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * A channel shared by all the nodes of the cluster.
+ * Every payload published by a node is delivered once to the listener of every node, including the publisher.
+ */
+public interface ClusterTransport {
+
+    void publish(String payload);
+
+    void setListener(Consumer<String> listener);
+}
@@ -0,0 +1,44 @@
+package io.falcon.assignment.service.cluster;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Transport between the nodes running in the same JVM, the stand-in for a real transport in tests
+ * and local runs with several application contexts. The payloads are delivered synchronously.
+ */
+public class InProcessClusterTransport implements ClusterTransport {
+
+    private static final Map<String, List<InProcessClusterTransport>> CHANNELS = new ConcurrentHashMap<>();
+
+    private final List<InProcessClusterTransport> members;
+
+    private volatile Consumer<String> listener;
+
+    public InProcessClusterTransport(String channel) {
+        this.members = CHANNELS.computeIfAbsent(channel, name -> new CopyOnWriteArrayList<>());
+        this.members.add(this);
+    }
+
+    @Override
+    public void publish(String payload) {
+        for (InProcessClusterTransport member : members) {
+            Consumer<String> memberListener = member.listener;
+            if (memberListener != null) {
+                memberListener.accept(payload);
+            }
+        }
+    }
+
+    @Override
+    public void setListener(Consumer<String> listener) {
+        this.listener = listener;
+    }
+
+    public void close() {
+        members.remove(this);
+    }
+}
@@ -0,0 +1,52 @@
+package io.falcon.assignment.service.cluster;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The highest id of the stored messages, read at most once per refresh-ms.
+ * <p>
+ * In cluster mode the write version of a node only follows the other nodes through their broadcasts, a lost
+ * notification would leave the listings of this node Not modified. The high-water mark is part of the ETag,
+ * so the messages of the other nodes are seen at most refresh-ms after they are committed, notified or not.
+ * Every partition has its primary key, the maximum is one index lookup per partition.
+ * The ids come from a pooled sequence: a message committed with an id below the mark does not move it,
+ * only the notification or the next higher id does.
+ */
+public class MessageHighWaterMark {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final long refreshNanos;
+
+    private volatile long mark;
+
+    // System.nanoTime() of the last read, only meaningful once read
+    private volatile long readAt;
+    private volatile boolean read;
+
+    public MessageHighWaterMark(JdbcTemplate jdbcTemplate, long refreshMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(refreshMs);
+    }
+
+    /**
+     * The mark, read from the database when it is older than refresh-ms, by one caller while the others wait
+     *
+     * @return the highest id of the stored messages, 0 without messages
+     */
+    public long get() {
+        if (!read || System.nanoTime() - readAt >= refreshNanos) {
+            synchronized (this) {
+                if (!read || System.nanoTime() - readAt >= refreshNanos) {
+                    Long max = jdbcTemplate.queryForObject("SELECT max(id) FROM messages", Long.class);
+                    mark = max == null ? 0 : max;
+                    readAt = System.nanoTime();
+                    read = true;
+                }
+            }
+        }
+        return mark;
+    }
+}
@@ -0,0 +1,107 @@
+package io.falcon.assignment.service.cluster;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Transport over the LISTEN / NOTIFY of the PostgreSQL database shared by the nodes.
+ * <p>
+ * A listener thread keeps its own connection and waits for the notifications of the channel.
+ * The payload of a notification is limited to 8000 bytes, far above the size of a message.
+ * The channel is an identifier in the LISTEN statement, it must be a lower case SQL identifier.
+ * The notifications sent while the listener reconnects are lost, the ClusterFanout counts them.
+ */
+public class PostgresNotifyClusterTransport implements ClusterTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(PostgresNotifyClusterTransport.class);
+
+    private static final Pattern CHANNEL = Pattern.compile("[a-z_][a-z0-9_]{0,62}");
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final String channel;
+
+    private volatile Consumer<String> listener;
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    public PostgresNotifyClusterTransport(DataSource dataSource, String channel) {
+        if (!CHANNEL.matcher(channel).matches()) {
+            throw new IllegalArgumentException("Invalid cluster channel " + channel
+                    + ", expected a lower case identifier of at most 63 characters");
+        }
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.channel = channel;
+    }
+
+    public void start() {
+        running = true;
+        listenerThread = new Thread(this::listen, "cluster-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    public void stop() throws InterruptedException {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.join(5000);
+        }
+    }
+
+    @Override
+    public void publish(String payload) {
+        jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", String.class, channel, payload);
+    }
+
+    @Override
+    public void setListener(Consumer<String> listener) {
+        this.listener = listener;
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(500);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        Consumer<String> currentListener = listener;
+                        if (currentListener != null) {
+                            currentListener.accept(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                // Notifications sent while reconnecting are lost, the ClusterFanout counts them
+                log.error("Cluster listener failed, reconnecting", e);
+                sleepBeforeReconnect();
+            }
+        }
+    }
+
+    private void sleepBeforeReconnect() {
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -1,82 +1,112 @@
 package io.falcon.assignment.utils;
 
+/**
+ * Computing the size of the longest palindrome in a text, considering only the ASCII letters (case sensitive).
+ * <p>
+ * The class is stateless and thread-safe, a single instance can be shared.
+ * The buffers used by the computation are reused per thread, so a call for a message content
+ * (up to 100 chars) does not allocate anything.
+ */
 public class LongestPalindromeSize {
 
+    // The maximum size of the content of a message, longer inputs get their own buffers
+    private static final int SCRATCH_SIZE = 100;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(() -> new Scratch(SCRATCH_SIZE));
+
     /**
      * This is an implementation of the Manacher's algorithm. The time complexity is linear or 0(n)
-     * There are 4 rules to take care of
-     * 1 : Right side palindrome is totally contained under current palindrome. In this case do not consider this as center.
-     * 2 : Current palindrome is proper suffix of input. Terminate the loop in this case. No better palindrom will be found on right.
-     * 3 : Right side palindrome is proper suffix and its corresponding left side palindrome is proper prefix of current palindrome. Make largest such point as
-     * next center.
-     * 4 : Right side palindrome is proper suffix but its left corresponding palindrome is be beyond current palindrome. Do not consider this
-     * as center because it will not extend at all.
      * <p>
-     * To handle even size palindromes replace input string with one containing $ between every input character and in start and end.
+     * To handle even size palindromes the letters are seen as if there was a $ between every letter and
+     * in start and end: abc -> $a$b$c$. The separators are never materialized, position p of the 2n + 1 positions
+     * is the letter (p - 1) / 2 when p is odd and a separator when p is even.
+     * <p>
+     * For every position the radius of the longest palindrome centered at it is computed. A palindrome reaching
+     * r positions on each side of its center contains exactly r letters, so the radius is the size of the palindrome.
+     * The radius of a position inside a known palindrome starts from the radius of its mirror position and is
+     * only expanded past the right edge of that palindrome, which makes the whole pass linear.
+     *
+     * @param inputString the text
+     * @return the size of the longest palindrome of letters, 0 if there are no letters
      */
     public int longestPalindromicSubstringLinear(String inputString) {
-        inputString = inputString.replaceAll("[^a-zA-Z]", "");
-        char[] input = inputString.toCharArray();
-        int index = 0;
-        //preprocess the input to convert it into type abc -> $a$b$c$ to handle even length case.
-        //Total size will be 2*n + 1 of this new array.
-        char[] newInput = new char[2 * input.length + 1];
-        for (int i = 0; i < newInput.length; i++) {
-            if (i % 2 != 0) {
-                newInput[i] = input[index++];
-            } else {
-                newInput[i] = '$';
+        int length = inputString.length();
+        Scratch scratch = length <= SCRATCH_SIZE ? SCRATCH.get() : new Scratch(length);
+
+        // Keeping only the letters, in a single pass
+        char[] letters = scratch.letters;
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            char c = inputString.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                letters[size++] = c;
             }
         }
 
-        //create temporary array for holding largest palindrome at every point. There are 2*n + 1 such points.
-        int[] T = new int[newInput.length];
-        int start = 0;
-        int end = 0;
-        //here i is the center.
-        for (int i = 0; i < newInput.length; ) {
-            //expand around i. See how far we can go.
-            while (start > 0 && end < newInput.length - 1 && newInput[start - 1] == newInput[end + 1]) {
-                start--;
-                end++;
-            }
-            //set the longest value of palindrome around center i at T[i]
-            T[i] = end - start + 1;
+        return longestPalindrome(letters, size, scratch.radius);
+    }
 
-            //this is case 2. Current palindrome is proper suffix of input. No need to proceed. Just break out of loop.
-            if (end == T.length - 1) {
-                break;
+    /**
+     * The letters of a text, the only characters that count for the palindromes.
+     * Two texts with the same letters have the same longest palindrome size.
+     *
+     * @param inputString the text
+     * @return the letters of the text, in order
+     */
+    public String letters(String inputString) {
+        int length = inputString.length();
+        char[] letters = length <= SCRATCH_SIZE ? SCRATCH.get().letters : new char[length];
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            char c = inputString.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                letters[size++] = c;
             }
-            //Mark newCenter to be either end or end + 1 depending on if we dealing with even or old number input.
-            int newCenter = end + (i % 2 == 0 ? 1 : 0);
+        }
+        return size == length ? inputString : new String(letters, 0, size);
+    }
+
+    private static int longestPalindrome(char[] letters, int size, int[] radius) {
+        int positions = 2 * size + 1;
+        // The palindrome reaching furthest to the right: its center and its right edge
+        int center = 0;
+        int right = 0;
+        int max = 0;
 
-            for (int j = i + 1; j <= end; j++) {
+        for (int p = 0; p < positions; p++) {
+            int r = p < right ? Math.min(right - p, radius[2 * center - p]) : 0;
 
-                //i - (j - i) is left mirror. Its possible left mirror might go beyond current center palindrome. So take minimum
-                //of either left side palindrome or distance of j to end.
-                T[j] = Math.min(T[i - (j - i)], 2 * (end - j) + 1);
-                //Only proceed if we get case 3. This check is to make sure we do not pick j as new center for case 1 or case 4
-                //As soon as we find a center lets break out of this inner while loop.
-                if (j + T[i - (j - i)] / 2 == end) {
-                    newCenter = j;
+            // Expand around p. The positions compared have the same parity, separators always match
+            while (p - r - 1 >= 0 && p + r + 1 < positions
+                    && (((p - r - 1) & 1) == 0 || letters[(p - r - 1) >> 1] == letters[(p + r + 1) >> 1])) {
+                r++;
+            }
+            radius[p] = r;
+
+            if (r > max) {
+                max = r;
+            }
+            if (p + r > right) {
+                center = p;
+                right = p + r;
+                // The palindrome is a suffix of the input, the ones centered further right are all shorter
+                if (right == positions - 1) {
                     break;
                 }
             }
-            //make i as newCenter. Set right and left to atleast the value we already know should be matching based of left side palindrome.
-            i = newCenter;
-            end = i + T[i] / 2;
-            start = i - T[i] / 2;
         }
+        return max;
+    }
 
-        //find the max palindrome in T and return it.
-        int max = Integer.MIN_VALUE;
-        for (int i1 : T) {
-            int val;
-            val = i1 / 2;
-            if (max < val) {
-                max = val;
-            }
+    private static class Scratch {
+
+        private final char[] letters;
+
+        private final int[] radius;
+
+        private Scratch(int length) {
+            this.letters = new char[length];
+            this.radius = new int[2 * length + 1];
         }
-        return max;
     }
 }
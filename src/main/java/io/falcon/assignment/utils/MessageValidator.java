@@ -0,0 +1,62 @@
+package io.falcon.assignment.utils;
+
+import io.falcon.assignment.model.entity.Message;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Validating the payload of a message: the size of the content and the format of the timestamp.
+ * <p>
+ * It gives the same violation messages as the javax.validation constraints of the Message entity,
+ * which use the same constants, without reflection. The timestamp is not formatted again for the check,
+ * the parse status recorded when the payload was read is enough: a null timestamp is an invalid format.
+ * A valid payload costs no allocation. The class is stateless and thread-safe.
+ */
+public final class MessageValidator {
+
+    public static final int MAX_CONTENT_SIZE = 100;
+
+    public static final String CONTENT_SIZE_ERROR = "Error: The size of the content must be between 1 and 100 chars";
+
+    public static final String TIMESTAMP_FORMAT_ERROR = "Error: Invalid timestamp format";
+
+    private MessageValidator() {
+    }
+
+    /**
+     * @param message the payload, as read from the request
+     * @return the messages of all the violations, empty if the message is valid
+     */
+    public static List<String> validate(Message message) {
+        return validate(message.getContent(), message.getTimestampValue());
+    }
+
+    /**
+     * @param content   the content of the payload
+     * @param timestamp the parsed timestamp of the payload, null if it is missing or has an invalid format
+     * @return the messages of all the violations, empty if the payload is valid
+     */
+    public static List<String> validate(String content, Timestamp timestamp) {
+        boolean validContent = isValidContent(content);
+        if (validContent && timestamp != null) {
+            return Collections.emptyList();
+        }
+
+        List<String> violations = new ArrayList<>(2);
+        if (!validContent) {
+            violations.add(CONTENT_SIZE_ERROR);
+        }
+        if (timestamp == null) {
+            violations.add(TIMESTAMP_FORMAT_ERROR);
+        }
+        return violations;
+    }
+
+    // A missing content can't be stored, it is reported like an empty one
+    private static boolean isValidContent(String content) {
+        return content != null && !content.isEmpty() && content.length() <= MAX_CONTENT_SIZE;
+    }
+}
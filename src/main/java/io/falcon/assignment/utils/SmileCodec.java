@@ -0,0 +1,82 @@
+package io.falcon.assignment.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Smile, the binary form of JSON offered besides JSON: same data model, so the same serializers,
+ * with length-prefixed values and back-references to the property names already written.
+ * <p>
+ * The payloads encoded once as JSON (the response of POST and the broadcasts) are transcoded token by token,
+ * without binding them to objects again. The class is stateless and thread-safe.
+ */
+public final class SmileCodec {
+
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    public static final MediaType APPLICATION_SMILE = MediaType.valueOf(APPLICATION_SMILE_VALUE);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final SmileFactory SMILE_FACTORY = new SmileFactory();
+
+    private SmileCodec() {
+    }
+
+    /**
+     * Transcoding a JSON value to Smile
+     *
+     * @param json the JSON of the value
+     * @return the same value in Smile
+     */
+    public static byte[] fromJson(byte[] json) {
+        try (ByteArrayBuilder smile = new ByteArrayBuilder(json.length);
+             JsonParser parser = JSON_FACTORY.createParser(json);
+             JsonGenerator generator = SMILE_FACTORY.createGenerator(smile)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+            generator.flush();
+            return smile.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to transcode a JSON value", e);
+        }
+    }
+
+    /**
+     * Telling from an Accept header whether the client prefers Smile to JSON.
+     * The media types are taken by specificity and quality, then in the order of the header,
+     * as the message converters of the other endpoints are chosen.
+     *
+     * @param accept the Accept header, null if the request has none
+     * @return true if Smile comes before JSON / false for a missing or invalid header
+     */
+    public static boolean isPreferred(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        List<MediaType> mediaTypes;
+        try {
+            mediaTypes = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+        MediaType.sortBySpecificityAndQuality(mediaTypes);
+        for (MediaType mediaType : mediaTypes) {
+            if (mediaType.includes(MediaType.APPLICATION_JSON)) {
+                return false;
+            }
+            if (mediaType.includes(APPLICATION_SMILE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,159 @@
+package io.falcon.assignment.utils;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Parsing and formatting the timestamps of the messages in the format "yyyy-MM-dd HH:mm:ssZ",
+ * for example 2018-10-09 00:12:12+0100.
+ * <p>
+ * The timestamps are formatted in the default time zone of the JVM. The class is immutable and thread-safe.
+ * The format has a fixed width, so both directions are done char by char without intermediate objects.
+ * Invalid input is reported with a null result, never with an exception.
+ */
+public final class TimestampCodec {
+
+    public static final String PATTERN = "yyyy-MM-dd HH:mm:ssZ";
+
+    // yyyy-MM-dd HH:mm:ss+HHmm
+    private static final int LENGTH = 24;
+
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    // Only used for the years which do not fit in 4 digits
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm:ssZ").withZone(ZONE);
+
+    private TimestampCodec() {
+    }
+
+    /**
+     * Parsing a timestamp in the format of the messages
+     *
+     * @param text the timestamp as a String
+     * @return the timestamp / null if the text is not a valid timestamp
+     */
+    public static Timestamp parse(String text) {
+        if (text == null || text.length() != LENGTH
+                || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != ' '
+                || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            return null;
+        }
+
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+        int offsetHours = digits(text, 20, 2);
+        int offsetMinutes = digits(text, 22, 2);
+        char sign = text.charAt(19);
+
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59
+                || offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59
+                || (sign != '+' && sign != '-')) {
+            return null;
+        }
+
+        int offsetSeconds = offsetHours * 3600 + offsetMinutes * 60;
+        if (sign == '-') {
+            offsetSeconds = -offsetSeconds;
+        }
+
+        long epochSecond = epochDay(year, month, day) * 86400 + hour * 3600 + minute * 60 + second - offsetSeconds;
+        return new Timestamp(epochSecond * 1000);
+    }
+
+    /**
+     * Formatting a timestamp in the format of the messages, in the default time zone
+     *
+     * @param timestamp the timestamp
+     * @return the timestamp as a String
+     */
+    public static String format(Timestamp timestamp) {
+        long epochSecond = Math.floorDiv(timestamp.getTime(), 1000L);
+        Instant instant = Instant.ofEpochSecond(epochSecond);
+        ZoneOffset offset = ZONE.getRules().getOffset(instant);
+        LocalDateTime local = LocalDateTime.ofEpochSecond(epochSecond, 0, offset);
+
+        int year = local.getYear();
+        if (year < 0 || year > 9999) {
+            return FORMATTER.format(instant);
+        }
+
+        char[] chars = new char[LENGTH];
+        write(chars, 0, year, 4);
+        chars[4] = '-';
+        write(chars, 5, local.getMonthValue(), 2);
+        chars[7] = '-';
+        write(chars, 8, local.getDayOfMonth(), 2);
+        chars[10] = ' ';
+        write(chars, 11, local.getHour(), 2);
+        chars[13] = ':';
+        write(chars, 14, local.getMinute(), 2);
+        chars[16] = ':';
+        write(chars, 17, local.getSecond(), 2);
+
+        int offsetSeconds = offset.getTotalSeconds();
+        chars[19] = offsetSeconds < 0 ? '-' : '+';
+        int offsetMinutes = Math.abs(offsetSeconds) / 60;
+        write(chars, 20, offsetMinutes / 60, 2);
+        write(chars, 22, offsetMinutes % 60, 2);
+        return new String(chars);
+    }
+
+    // The value of count digits starting at start, -1 if there is a char that is not a digit
+    private static int digits(String text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static void write(char[] chars, int start, int value, int count) {
+        for (int i = start + count - 1; i >= start; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2 && isLeapYear(year)) {
+            return 29;
+        }
+        return DAYS_IN_MONTH[month - 1];
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    // Days since 1970-01-01 in the proleptic Gregorian calendar, the same as LocalDate.toEpochDay()
+    private static long epochDay(int year, int month, int day) {
+        long y = year;
+        long total = 365 * y;
+        total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        // Days from year 0 to 1970
+        return total - 719528;
+    }
+}
@@ -0,0 +1,211 @@
+package io.falcon.assignment.websocket;
+
+import io.falcon.assignment.service.MessageBroadcaster;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the broadcasts to /public into array frames sent to /public.batch.
+ * <p>
+ * It intercepts the messages sent to the broker, so it sees the broadcasts of this node and,
+ * in cluster mode, the ones relayed from the other nodes. A batch is sent when it reaches max-messages
+ * or when the window has passed since its first message. The payloads are already JSON,
+ * the frame is their concatenation in a JSON array. The /public destination is not affected.
+ * The messages committed together by the bulk endpoint are added as a whole, they make a frame of their own.
+ * <p>
+ * The batches are sent by a single thread, in the order the messages were broadcast.
+ * It is opt-in (messages.broadcast.batch.enabled): when enabled every broadcast is copied into the batches,
+ * whether /public.batch has subscribers or not.
+ */
+@Component
+@ConditionalOnProperty(name = "messages.broadcast.batch.enabled", havingValue = "true")
+public class BroadcastBatcher implements ChannelInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(BroadcastBatcher.class);
+
+    public static final String DESTINATION = MessageBroadcaster.DESTINATION + ".batch";
+
+    private final SimpMessageSendingOperations messagingTemplate;
+
+    private final long windowMs;
+    private final int maxMessages;
+
+    private final ScheduledExecutorService sender;
+
+    private final Object lock = new Object();
+    private List<byte[]> pending;
+    private int pendingBytes;
+    // The highest sequence number in the batch, 0 if none of its messages has one, and the node that assigned it
+    private long pendingSeq;
+    private String pendingNode;
+    // Tells the scheduled flush of a batch apart from the flush of a later one
+    private long generation;
+
+    // The template is lazy, the broker channel it sends to is the one this interceptor is registered on
+    @Autowired
+    public BroadcastBatcher(@Lazy SimpMessageSendingOperations messagingTemplate,
+                            @Value("${messages.broadcast.batch.window-ms:10}") long windowMs,
+                            @Value("${messages.broadcast.batch.max-messages:100}") int maxMessages) {
+        this.messagingTemplate = messagingTemplate;
+        this.windowMs = windowMs;
+        this.maxMessages = maxMessages;
+        this.pending = new ArrayList<>(maxMessages);
+        this.sender = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "broadcast-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        sender.shutdown();
+    }
+
+    @Override
+    public void postSend(Message<?> message, MessageChannel channel, boolean sent) {
+        if (sent && message.getPayload() instanceof byte[]
+                && MessageBroadcaster.DESTINATION.equals(SimpMessageHeaderAccessor.getDestination(message.getHeaders()))
+                && !message.getHeaders().containsKey(MessageBroadcaster.COALESCED_HEADER)) {
+            String seq = SimpMessageHeaderAccessor.getFirstNativeHeader(MessageBroadcaster.SEQ_HEADER, message.getHeaders());
+            add((byte[]) message.getPayload(), seq == null ? 0 : Long.parseLong(seq),
+                    SimpMessageHeaderAccessor.getFirstNativeHeader(MessageBroadcaster.SEQ_NODE_HEADER, message.getHeaders()));
+        }
+    }
+
+    /**
+     * Adding the JSON of a broadcast message to the current batch
+     *
+     * @param json the payload
+     * @param seq  the sequence number of the message, 0 if it has none
+     * @param node the node that assigned the sequence number, null if it has none
+     */
+    public void add(byte[] json, long seq, String node) {
+        synchronized (lock) {
+            pending.add(json);
+            pendingBytes += json.length;
+            if (seq > pendingSeq) {
+                pendingSeq = seq;
+                pendingNode = node;
+            }
+            if (pending.size() >= maxMessages) {
+                Message<byte[]> frame = cut();
+                sender.execute(() -> send(frame));
+            } else if (pending.size() == 1) {
+                long current = generation;
+                sender.schedule(() -> flush(current), windowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Sending messages broadcast together as one frame, after the current batch
+     *
+     * @param items the JSON of the messages
+     * @param seq   the highest sequence number of the messages, 0 if none has one
+     * @param node  the node that assigned the sequence numbers
+     */
+    public void addBatch(List<byte[]> items, long seq, String node) {
+        int itemsBytes = 0;
+        for (byte[] json : items) {
+            itemsBytes += json.length;
+        }
+        Message<byte[]> frame = frame(jsonArray(items, itemsBytes), seq, node);
+        synchronized (lock) {
+            // The messages broadcast before come first
+            Message<byte[]> current = pending.isEmpty() ? null : cut();
+            sender.execute(() -> {
+                if (current != null) {
+                    send(current);
+                }
+                send(frame);
+            });
+        }
+    }
+
+    private void flush(long batchGeneration) {
+        Message<byte[]> frame;
+        synchronized (lock) {
+            // Already sent because it was full
+            if (batchGeneration != generation || pending.isEmpty()) {
+                return;
+            }
+            frame = cut();
+        }
+        send(frame);
+    }
+
+    // Takes the current batch, called with the lock held
+    // The frame carries the highest sequence number of its messages
+    private Message<byte[]> cut() {
+        Message<byte[]> frame = frame(jsonArray(pending, pendingBytes), pendingSeq, pendingNode);
+
+        pending = new ArrayList<>(maxMessages);
+        pendingBytes = 0;
+        pendingSeq = 0;
+        pendingNode = null;
+        generation++;
+        return frame;
+    }
+
+    private static Message<byte[]> frame(byte[] array, long seq, String node) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        if (seq > 0) {
+            headers.setNativeHeader(MessageBroadcaster.SEQ_HEADER, Long.toString(seq));
+            headers.setNativeHeader(MessageBroadcaster.SEQ_NODE_HEADER, node);
+        }
+        headers.setLeaveMutable(true);
+        return MessageBuilder.createMessage(array, headers.getMessageHeaders());
+    }
+
+    private void send(Message<byte[]> frame) {
+        try {
+            messagingTemplate.send(DESTINATION, frame);
+        } catch (RuntimeException e) {
+            log.error("Failed to send a batch of messages", e);
+        }
+    }
+
+    /**
+     * Concatenating JSON values into a JSON array
+     *
+     * @param items      the JSON of the values
+     * @param itemsBytes the total size of the values
+     * @return the JSON array
+     */
+    static byte[] jsonArray(List<byte[]> items, int itemsBytes) {
+        byte[] array = new byte[itemsBytes + Math.max(1, items.size()) + 1];
+        array[0] = '[';
+        int position = 1;
+        for (byte[] json : items) {
+            if (position > 1) {
+                array[position++] = ',';
+            }
+            System.arraycopy(json, 0, array, position, json.length);
+            position += json.length;
+        }
+        array[position] = ']';
+        return array;
+    }
+}
@@ -0,0 +1,45 @@
+package io.falcon.assignment.websocket;
+
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+/**
+ * The handler of the STOMP sessions, with a configurable strategy for the slow consumers.
+ * <p>
+ * The messages for a session are buffered while a send to it is going on. When the buffer of a slow session
+ * goes over the limit it is either closed (TERMINATE) or kept in a degraded mode where the oldest buffered
+ * messages are dropped (DROP). A send taking longer than the send time limit always closes the session.
+ * The buffers of all the sessions are tracked by the {@link WebSocketSessionMonitor}.
+ */
+public class MonitoredSubProtocolWebSocketHandler extends SubProtocolWebSocketHandler {
+
+    private final WebSocketSessionMonitor sessionMonitor;
+
+    private final ConcurrentWebSocketSessionDecorator.OverflowStrategy overflowStrategy;
+
+    public MonitoredSubProtocolWebSocketHandler(MessageChannel clientInboundChannel, SubscribableChannel clientOutboundChannel,
+                                                WebSocketSessionMonitor sessionMonitor,
+                                                ConcurrentWebSocketSessionDecorator.OverflowStrategy overflowStrategy) {
+        super(clientInboundChannel, clientOutboundChannel);
+        this.sessionMonitor = sessionMonitor;
+        this.overflowStrategy = overflowStrategy;
+    }
+
+    @Override
+    protected WebSocketSession decorateSession(WebSocketSession session) {
+        ConcurrentWebSocketSessionDecorator decorated = new ConcurrentWebSocketSessionDecorator(
+                session, getSendTimeLimit(), getSendBufferSizeLimit(), overflowStrategy);
+        sessionMonitor.register(decorated);
+        return decorated;
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        sessionMonitor.unregister(session.getId());
+        super.afterConnectionClosed(session, closeStatus);
+    }
+}
@@ -0,0 +1,88 @@
+package io.falcon.assignment.websocket;
+
+import io.falcon.assignment.service.MessageBroadcaster;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the delivery of the broadcasts through the external STOMP broker, in relay broker mode.
+ * <p>
+ * The broadcasts sent to the broker get the "sent-at" header, the wall clock time of this node. The broker keeps
+ * the headers of the frames it delivers, so the frames it sends back to the sessions of every node carry it:
+ * the latency is recorded once per delivered frame, with the wall clocks of the sending and receiving nodes.
+ */
+@Component
+@ConditionalOnProperty(name = "messages.broker.mode", havingValue = "relay")
+public class RelayLatencyMonitor {
+
+    public static final String SENT_AT_HEADER = "sent-at";
+
+    private final Timer relayLatency;
+
+    // Registered on the broker channel
+    private final ChannelInterceptor brokerInterceptor = new ChannelInterceptor() {
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+            return stamp(message);
+        }
+    };
+
+    // Registered on the client outbound channel
+    private final ChannelInterceptor outboundInterceptor = new ChannelInterceptor() {
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+            record(message);
+            return message;
+        }
+    };
+
+    @Autowired
+    public RelayLatencyMonitor(MeterRegistry meterRegistry) {
+        this.relayLatency = Timer.builder("messages.broker.relay.latency")
+                .description("Time between sending a broadcast to the external broker and a session getting it")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    public ChannelInterceptor getBrokerInterceptor() {
+        return brokerInterceptor;
+    }
+
+    public ChannelInterceptor getOutboundInterceptor() {
+        return outboundInterceptor;
+    }
+
+    private Message<?> stamp(Message<?> message) {
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE
+                || destination == null || !destination.startsWith(MessageBroadcaster.DESTINATION)) {
+            return message;
+        }
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(message);
+        headers.setNativeHeader(SENT_AT_HEADER, Long.toString(System.currentTimeMillis()));
+        return MessageBuilder.createMessage(message.getPayload(), headers.getMessageHeaders());
+    }
+
+    private void record(Message<?> message) {
+        String sentAt = SimpMessageHeaderAccessor.getFirstNativeHeader(SENT_AT_HEADER, message.getHeaders());
+        if (sentAt == null) {
+            return;
+        }
+        try {
+            relayLatency.record(Math.max(0, System.currentTimeMillis() - Long.parseLong(sentAt)), TimeUnit.MILLISECONDS);
+        } catch (NumberFormatException e) {
+            // Not set by a node, the frame is delivered as it is
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package io.falcon.assignment.websocket;
+
+import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.model.repository.MessageRepository;
+import io.falcon.assignment.service.BroadcastSequence;
+import io.falcon.assignment.service.MessageBroadcaster;
+import io.falcon.assignment.service.RecentMessageBuffer;
+import io.falcon.assignment.utils.SmileCodec;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays the messages a reconnecting client missed.
+ * <p>
+ * A client subscribing to /public, /public.batch or /public.smile with a "since-seq" and a "since-node" header,
+ * the last "seq" and "seq-node" it has seen, gets the messages broadcast after it sent to its subscription:
+ * one frame per message for /public and /public.smile, one array frame for /public.batch.
+ * They come from the ring buffer of the recent broadcasts, or from the database when the gap is older than the buffer
+ * but still in the index of the BroadcastSequence. The database is read by the replay threads, not by the thread
+ * handling the SUBSCRIBE frames. At most max-messages are replayed, a longer gap can be read through
+ * the paginated endpoint.
+ * <p>
+ * The sequence numbers are those of the node the client was connected to: a client coming from another node
+ * or from a previous run of this one, or with a gap older than the index, gets nothing replayed (counted
+ * by messages.replay.unavailable). The live messages may start before the replay ends,
+ * the "seq" header lets the client skip the duplicates.
+ */
+@Component
+public class ReplayOnSubscribe {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplayOnSubscribe.class);
+
+    public static final String SINCE_SEQ_HEADER = "since-seq";
+
+    public static final String SINCE_NODE_HEADER = "since-node";
+
+    private MessageBroadcaster messageBroadcaster;
+    private MessageRepository messageRepository;
+    private MessageChannel clientOutboundChannel;
+
+    private int maxMessages;
+
+    private ExecutorService databaseReader;
+
+    private Counter fromBuffer;
+    private Counter fromDatabase;
+    private Counter unavailable;
+
+    @Autowired
+    public ReplayOnSubscribe(MessageBroadcaster messageBroadcaster, MessageRepository messageRepository,
+                             @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel,
+                             MeterRegistry meterRegistry,
+                             @Value("${messages.replay.max-messages:1000}") int maxMessages,
+                             @Value("${messages.replay.database-threads:2}") int databaseThreads) {
+        this.messageBroadcaster = messageBroadcaster;
+        this.messageRepository = messageRepository;
+        this.clientOutboundChannel = clientOutboundChannel;
+        this.maxMessages = maxMessages;
+
+        AtomicInteger threads = new AtomicInteger();
+        this.databaseReader = Executors.newFixedThreadPool(databaseThreads, runnable -> {
+            Thread thread = new Thread(runnable, "replay-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.fromBuffer = Counter.builder("messages.replay").tag("source", "buffer")
+                .description("Messages replayed to reconnecting clients").register(meterRegistry);
+        this.fromDatabase = Counter.builder("messages.replay").tag("source", "database")
+                .description("Messages replayed to reconnecting clients").register(meterRegistry);
+        this.unavailable = Counter.builder("messages.replay.unavailable")
+                .description("Subscriptions whose gap could not be replayed").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        databaseReader.shutdown();
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor subscribe = StompHeaderAccessor.wrap(event.getMessage());
+        String destination = subscribe.getDestination();
+        String sinceSeq = subscribe.getFirstNativeHeader(SINCE_SEQ_HEADER);
+        if (sinceSeq == null || !(MessageBroadcaster.DESTINATION.equals(destination)
+                || BroadcastBatcher.DESTINATION.equals(destination)
+                || SmileBroadcastTranscoder.DESTINATION.equals(destination))) {
+            return;
+        }
+
+        long since;
+        try {
+            since = Long.parseLong(sinceSeq);
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring the invalid {} header {}", SINCE_SEQ_HEADER, sinceSeq);
+            return;
+        }
+
+        BroadcastSequence sequence = messageBroadcaster.getSequence();
+        if (!sequence.getNodeId().equals(subscribe.getFirstNativeHeader(SINCE_NODE_HEADER))) {
+            log.debug("Not replaying the messages of another node to session {}", subscribe.getSessionId());
+            unavailable.increment();
+            return;
+        }
+
+        List<RecentMessageBuffer.Entry> missed = messageBroadcaster.getRecentMessages().after(since);
+        if (missed != null) {
+            if (missed.size() > maxMessages) {
+                missed = missed.subList(0, maxMessages);
+            }
+            fromBuffer.increment(missed.size());
+            replay(subscribe, missed);
+            return;
+        }
+
+        // The gap is older than the buffer
+        long[] ids = sequence.idsAfter(since, maxMessages);
+        if (ids == null) {
+            unavailable.increment();
+            return;
+        }
+        databaseReader.execute(() -> {
+            try {
+                List<RecentMessageBuffer.Entry> stored = storedMessages(since, ids);
+                fromDatabase.increment(stored.size());
+                replay(subscribe, stored);
+            } catch (RuntimeException e) {
+                log.error("Failed to replay the messages of session {}", subscribe.getSessionId(), e);
+            }
+        });
+    }
+
+    private void replay(StompHeaderAccessor subscribe, List<RecentMessageBuffer.Entry> missed) {
+        if (missed.isEmpty()) {
+            return;
+        }
+
+        String destination = subscribe.getDestination();
+        if (BroadcastBatcher.DESTINATION.equals(destination)) {
+            List<byte[]> items = new ArrayList<>(missed.size());
+            int itemsBytes = 0;
+            for (RecentMessageBuffer.Entry entry : missed) {
+                items.add(entry.getJson());
+                itemsBytes += entry.getJson().length;
+            }
+            send(subscribe, BroadcastBatcher.jsonArray(items, itemsBytes), missed.get(missed.size() - 1).getSeq());
+        } else if (SmileBroadcastTranscoder.DESTINATION.equals(destination)) {
+            for (RecentMessageBuffer.Entry entry : missed) {
+                send(subscribe, SmileCodec.fromJson(entry.getJson()), entry.getSeq());
+            }
+        } else {
+            for (RecentMessageBuffer.Entry entry : missed) {
+                send(subscribe, entry.getJson(), entry.getSeq());
+            }
+        }
+    }
+
+    // The messages of the sequence numbers after since, the ones dropped with their partition are skipped
+    private List<RecentMessageBuffer.Entry> storedMessages(long since, long[] ids) {
+        List<Long> idList = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            idList.add(id);
+        }
+        Map<Long, Message> messages = new HashMap<>();
+        for (Message message : messageRepository.findAllById(idList)) {
+            messages.put(message.getId(), message);
+        }
+
+        List<RecentMessageBuffer.Entry> stored = new ArrayList<>(messages.size());
+        for (int i = 0; i < ids.length; i++) {
+            Message message = messages.get(ids[i]);
+            if (message != null) {
+                stored.add(new RecentMessageBuffer.Entry(since + 1 + i, messageBroadcaster.encode(message)));
+            }
+        }
+        return stored;
+    }
+
+    // Sent straight to the session, the other subscribers do not get it
+    private void send(StompHeaderAccessor subscribe, byte[] payload, long seq) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(subscribe.getSessionId());
+        headers.setSubscriptionId(subscribe.getSubscriptionId());
+        headers.setDestination(subscribe.getDestination());
+        if (SmileBroadcastTranscoder.DESTINATION.equals(subscribe.getDestination())) {
+            headers.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+            headers.setNativeHeader(SmileBroadcastTranscoder.PAYLOAD_TYPE_HEADER, SmileCodec.APPLICATION_SMILE_VALUE);
+        } else {
+            headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        }
+        headers.setNativeHeader(MessageBroadcaster.SEQ_HEADER, Long.toString(seq));
+        headers.setNativeHeader(MessageBroadcaster.SEQ_NODE_HEADER, messageBroadcaster.getSequence().getNodeId());
+        clientOutboundChannel.send(MessageBuilder.createMessage(payload, headers.getMessageHeaders()));
+    }
+}
@@ -0,0 +1,79 @@
+package io.falcon.assignment.websocket;
+
+import io.falcon.assignment.service.MessageBroadcaster;
+import io.falcon.assignment.utils.SmileCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+/**
+ * Sends the broadcasts to /public again as Smile, to /public.smile.
+ * <p>
+ * Like the BroadcastBatcher it intercepts the messages sent to the broker, so it sees the broadcasts of this node
+ * and the ones relayed from the other nodes. The JSON is transcoded once per message, whatever the number of
+ * subscribers, and the frame keeps the "seq" and "seq-node" headers.
+ * <p>
+ * The STOMP handler of Spring only sends a body as a binary Websocket frame when its content-type is
+ * application/octet-stream, any other body is sent as text. The frames carry that content-type, the format
+ * of the body is in the "payload-type" header. The destination needs a plain Websocket connection
+ * (/ws/websocket): SockJS only carries text.
+ * <p>
+ * It is opt-in (messages.broadcast.smile.enabled): when enabled every broadcast is transcoded,
+ * whether /public.smile has subscribers or not.
+ */
+@Component
+@ConditionalOnProperty(name = "messages.broadcast.smile.enabled", havingValue = "true")
+public class SmileBroadcastTranscoder implements ChannelInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(SmileBroadcastTranscoder.class);
+
+    public static final String DESTINATION = MessageBroadcaster.DESTINATION + ".smile";
+
+    public static final String PAYLOAD_TYPE_HEADER = "payload-type";
+
+    private final SimpMessageSendingOperations messagingTemplate;
+
+    // The template is lazy, the broker channel it sends to is the one this interceptor is registered on
+    @Autowired
+    public SmileBroadcastTranscoder(@Lazy SimpMessageSendingOperations messagingTemplate) {
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    @Override
+    public void postSend(Message<?> message, MessageChannel channel, boolean sent) {
+        if (sent && message.getPayload() instanceof byte[]
+                && MessageBroadcaster.DESTINATION.equals(SimpMessageHeaderAccessor.getDestination(message.getHeaders()))) {
+            String seq = SimpMessageHeaderAccessor.getFirstNativeHeader(MessageBroadcaster.SEQ_HEADER, message.getHeaders());
+            String node = SimpMessageHeaderAccessor.getFirstNativeHeader(MessageBroadcaster.SEQ_NODE_HEADER, message.getHeaders());
+            try {
+                messagingTemplate.send(DESTINATION, frame(SmileCodec.fromJson((byte[]) message.getPayload()), seq, node));
+            } catch (RuntimeException e) {
+                log.error("Failed to send a message as Smile", e);
+            }
+        }
+    }
+
+    // The frame carries the sequence number of the message, if it has one
+    private static Message<byte[]> frame(byte[] smile, String seq, String node) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        headers.setNativeHeader(PAYLOAD_TYPE_HEADER, SmileCodec.APPLICATION_SMILE_VALUE);
+        if (seq != null) {
+            headers.setNativeHeader(MessageBroadcaster.SEQ_HEADER, seq);
+            headers.setNativeHeader(MessageBroadcaster.SEQ_NODE_HEADER, node);
+        }
+        headers.setLeaveMutable(true);
+        return MessageBuilder.createMessage(smile, headers.getMessageHeaders());
+    }
+}
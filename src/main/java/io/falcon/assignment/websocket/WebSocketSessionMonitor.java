@@ -0,0 +1,126 @@
+package io.falcon.assignment.websocket;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the send buffers of the connected Websocket sessions.
+ * <p>
+ * A session is slow when a send to it has been going on for longer than the slow consumer threshold,
+ * the messages for it pile up in its buffer meanwhile. The aggregated values are exposed as metrics,
+ * the values of every session by the websocketsessions actuator endpoint.
+ */
+@Component
+public class WebSocketSessionMonitor {
+
+    private final Map<String, ConcurrentWebSocketSessionDecorator> sessions = new ConcurrentHashMap<>();
+
+    private final long slowThresholdMs;
+
+    @Autowired
+    public WebSocketSessionMonitor(MeterRegistry meterRegistry,
+                                   @Value("${messages.websocket.slow-consumer-threshold-ms:1000}") long slowThresholdMs) {
+        this.slowThresholdMs = slowThresholdMs;
+
+        Gauge.builder("messages.websocket.sessions", sessions, Map::size)
+                .description("Active STOMP sessions")
+                .register(meterRegistry);
+        Gauge.builder("messages.websocket.sessions.slow", this, WebSocketSessionMonitor::countSlow)
+                .description("Sessions with a send going on for longer than the slow consumer threshold")
+                .register(meterRegistry);
+        Gauge.builder("messages.websocket.buffer.max", this, WebSocketSessionMonitor::maxBufferSize)
+                .description("The largest send buffer of a session")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("messages.websocket.buffer.total", this, WebSocketSessionMonitor::totalBufferSize)
+                .description("The sum of the send buffers of all the sessions")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public void register(ConcurrentWebSocketSessionDecorator session) {
+        sessions.put(session.getId(), session);
+    }
+
+    public void unregister(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    public List<SessionState> getSessions() {
+        List<SessionState> states = new ArrayList<>(sessions.size());
+        for (ConcurrentWebSocketSessionDecorator session : sessions.values()) {
+            long sendingFor = session.getTimeSinceSendStarted();
+            states.add(new SessionState(session.getId(), session.getBufferSize(), sendingFor, sendingFor > slowThresholdMs));
+        }
+        return states;
+    }
+
+    private double countSlow() {
+        int slow = 0;
+        for (ConcurrentWebSocketSessionDecorator session : sessions.values()) {
+            if (session.getTimeSinceSendStarted() > slowThresholdMs) {
+                slow++;
+            }
+        }
+        return slow;
+    }
+
+    private double maxBufferSize() {
+        int max = 0;
+        for (ConcurrentWebSocketSessionDecorator session : sessions.values()) {
+            max = Math.max(max, session.getBufferSize());
+        }
+        return max;
+    }
+
+    private double totalBufferSize() {
+        long total = 0;
+        for (ConcurrentWebSocketSessionDecorator session : sessions.values()) {
+            total += session.getBufferSize();
+        }
+        return total;
+    }
+
+    public static class SessionState {
+
+        private final String id;
+
+        private final int bufferSize;
+
+        private final long sendingForMs;
+
+        private final boolean slow;
+
+        public SessionState(String id, int bufferSize, long sendingForMs, boolean slow) {
+            this.id = id;
+            this.bufferSize = bufferSize;
+            this.sendingForMs = sendingForMs;
+            this.slow = slow;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public long getSendingForMs() {
+            return sendingForMs;
+        }
+
+        public boolean isSlow() {
+            return slow;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package io.falcon.assignment.websocket;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Actuator endpoint with the send buffer depth of every connected Websocket session,
+ * at /actuator/websocketsessions
+ */
+@Component
+@Endpoint(id = "websocketsessions")
+public class WebSocketSessionsEndpoint {
+
+    private WebSocketSessionMonitor sessionMonitor;
+
+    @Autowired
+    public WebSocketSessionsEndpoint(WebSocketSessionMonitor sessionMonitor) {
+        this.sessionMonitor = sessionMonitor;
+    }
+
+    @ReadOperation
+    public List<WebSocketSessionMonitor.SessionState> sessions() {
+        return sessionMonitor.getSessions();
+    }
+}
@@ -0,0 +1,11 @@
+--
+-- The schema as it was created by the former database/01_ddl.sql init script,
+-- the databases initialized by that script already have it
+--
+CREATE SEQUENCE IF NOT EXISTS messages_id_seq INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS messages (
+    id bigint,
+    content character varying(100),
+    timestamp timestamp
+);
@@ -0,0 +1,14 @@
+--
+-- Primary key, time index and the precomputed longest palindrome size
+--
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS longest_palindrome_size integer;
+
+ALTER TABLE messages ALTER COLUMN id SET NOT NULL;
+ALTER TABLE messages ALTER COLUMN content SET NOT NULL;
+ALTER TABLE messages ADD CONSTRAINT messages_pkey PRIMARY KEY (id);
+
+-- Time range queries and the keyset pagination in (timestamp, id) order
+CREATE INDEX messages_timestamp_id_idx ON messages (timestamp, id);
+
+-- The backfill only looks for the rows without a longest palindrome size, there are none once it is done
+CREATE INDEX messages_palindrome_backfill_idx ON messages (id) WHERE longest_palindrome_size IS NULL;
@@ -0,0 +1,32 @@
+--
+-- Range partitioning of the messages by timestamp
+--
+-- The existing table becomes the archive partition, holding every timestamp before the current month
+-- (or after its last message). The partitions after it are created and dropped by the MessagePartitionManager.
+-- On PostgreSQL 10 the partitioned table can't have indexes, every partition has its own.
+--
+DO $$
+DECLARE
+    bound timestamp;
+BEGIN
+    SELECT greatest(date_trunc('month', localtimestamp), date_trunc('month', max(timestamp)) + interval '1 month')
+    INTO bound
+    FROM messages;
+
+    ALTER TABLE messages RENAME TO messages_archive;
+    ALTER INDEX messages_pkey RENAME TO messages_archive_pkey;
+    ALTER INDEX messages_timestamp_id_idx RENAME TO messages_archive_timestamp_id_idx;
+    ALTER INDEX messages_palindrome_backfill_idx RENAME TO messages_archive_backfill_idx;
+    -- A message without timestamp can't be routed to a partition, the API never stored one
+    ALTER TABLE messages_archive ALTER COLUMN timestamp SET NOT NULL;
+
+    CREATE TABLE messages (
+        id bigint NOT NULL,
+        content character varying(100) NOT NULL,
+        timestamp timestamp NOT NULL,
+        longest_palindrome_size integer
+    ) PARTITION BY RANGE (timestamp);
+
+    EXECUTE format('ALTER TABLE messages ATTACH PARTITION messages_archive FOR VALUES FROM (MINVALUE) TO (%L)', bound);
+END
+$$;
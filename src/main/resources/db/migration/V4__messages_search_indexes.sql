@@ -0,0 +1,21 @@
+--
+-- Indexes of the content search and of the longest palindrome size filter
+--
+-- The trigram index serves the substring and the prefix searches (LIKE '%text%', LIKE 'text%').
+-- The partitions created later get the same indexes from the MessagePartitionManager.
+--
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+DO $$
+DECLARE
+    partition name;
+BEGIN
+    FOR partition IN
+        SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'messages'::regclass
+    LOOP
+        EXECUTE format('CREATE INDEX %I ON %I USING gin (content gin_trgm_ops)', partition || '_content_trgm_idx', partition);
+        EXECUTE format('CREATE INDEX %I ON %I (longest_palindrome_size)', partition || '_palindrome_idx', partition);
+    END LOOP;
+END
+$$;
@@ -0,0 +1,19 @@
+--
+-- Number of messages per hour and longest palindrome size, maintained by the ingest path
+--
+-- The per hour maximum, average and the histogram of the sizes are computed from it, the cost of the aggregates
+-- depends on the number of hours (and of distinct sizes, at most 101) and not on the number of messages.
+--
+CREATE TABLE message_palindrome_stats (
+    bucket timestamp NOT NULL,
+    longest_palindrome_size integer NOT NULL,
+    messages bigint NOT NULL,
+    PRIMARY KEY (bucket, longest_palindrome_size)
+);
+
+-- The messages still without a size are counted when the backfill fills it
+INSERT INTO message_palindrome_stats (bucket, longest_palindrome_size, messages)
+SELECT date_trunc('hour', timestamp), longest_palindrome_size, count(*)
+FROM messages
+WHERE longest_palindrome_size IS NOT NULL
+GROUP BY 1, 2;
@@ -6,33 +6,76 @@ var connectingElement = document.querySelector('.connecting');
 
 var stompClient = null;
 
+// With ?batch in the URL the page subscribes to the batched destination, every frame is an array of messages
+var useBatches = new URLSearchParams(window.location.search).has('batch');
+
+// The sequence number of the last message received and the node that assigned it,
+// the server replays the newer ones when reconnecting to the same node
+var lastSeq = null;
+var lastNode = null;
+// The recent sequence numbers, the replayed messages and the live ones can overlap
+var seenSeqs = new Set();
+
 function connect(event) {
 
     var socket = new SockJS('/ws');
     stompClient = Stomp.over(socket);
 
     stompClient.connect({}, onConnected, onError);
-    event.preventDefault();
+    if (event) {
+        event.preventDefault();
+    }
 }
 
 
 function onConnected() {
 
     // Subscribe to the Public Topic
-    stompClient.subscribe('/public', onMessageReceived);
+    var headers = lastSeq === null ? {} : {'since-seq': lastSeq, 'since-node': lastNode};
+    stompClient.subscribe(useBatches ? '/public.batch' : '/public', onMessageReceived, headers);
 
     connectingElement.classList.add('hidden');
 }
 
 
 function onError(error) {
-    connectingElement.textContent = 'Could not connect to WebSocket server. Please refresh this page to try again!';
+    connectingElement.textContent = 'Could not connect to WebSocket server. Reconnecting...';
     connectingElement.style.color = 'red';
+    connectingElement.classList.remove('hidden');
+
+    // Reconnecting, the messages broadcast in the meantime are replayed
+    setTimeout(connect, 5000);
 }
 
 function onMessageReceived(payload) {
-    var message = JSON.parse(payload.body);
+    // A batch frame has the sequence number of its last message
+    var seq = payload.headers.seq === undefined ? null : Number(payload.headers.seq);
+    if (seq !== null) {
+        // The numbers of another node, or of a restarted one, start over
+        if (payload.headers['seq-node'] !== lastNode) {
+            lastNode = payload.headers['seq-node'];
+            lastSeq = null;
+            seenSeqs.clear();
+        }
+        if (seenSeqs.has(seq)) {
+            return;
+        }
+        seenSeqs.add(seq);
+        if (seenSeqs.size > 1000) {
+            seenSeqs.delete(seenSeqs.values().next().value);
+        }
+        // The broadcasts come in sequence order
+        lastSeq = lastSeq === null ? seq : Math.max(lastSeq, seq);
+    }
+
+    var body = JSON.parse(payload.body);
+    var messages = Array.isArray(body) ? body : [body];
+
+    messages.forEach(showMessage);
+    messageArea.scrollTop = messageArea.scrollHeight;
+}
 
+function showMessage(message) {
     var messageElement = document.createElement('li');
     messageElement.classList.add('ws-message');
     var textElement = document.createElement('p');
@@ -42,7 +85,6 @@ function onMessageReceived(payload) {
     messageElement.appendChild(textElement);
 
     messageArea.appendChild(messageElement);
-    messageArea.scrollTop = messageArea.scrollHeight;
 }
 
 window.addEventListener('load', connect, true)
\ No newline at end of file
@@ -0,0 +1,39 @@
+package io.falcon.assignment.config;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class VirtualThreadConfigTests {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(TaskExecutionAutoConfiguration.class))
+            .withUserConfiguration(VirtualThreadConfig.class)
+            .withPropertyValues("messages.execution.mode=virtual");
+
+    // On Java 21 the customizer is there and the task executor of Spring Boot is kept
+    @Test
+    public void virtualMode_java21() {
+        Assume.assumeTrue(Runtime.version().feature() >= 21);
+
+        contextRunner.run(context -> {
+            assertThat(context).hasNotFailed();
+            assertThat(context).hasSingleBean(VirtualThreadConfig.VirtualThreadTomcatCustomizer.class);
+            assertThat(context).hasBean("applicationTaskExecutor");
+        });
+    }
+
+    // Before Java 21 the context fails to start, with the reason
+    @Test
+    public void virtualMode_beforeJava21() {
+        Assume.assumeTrue(Runtime.version().feature() < 21);
+
+        contextRunner.run(context -> assertThat(context).getFailure()
+                .hasStackTraceContaining("messages.execution.mode=virtual needs Java 21 or newer"));
+    }
+}
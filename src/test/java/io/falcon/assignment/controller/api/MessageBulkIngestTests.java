@@ -0,0 +1,67 @@
+package io.falcon.assignment.controller.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.falcon.assignment.model.dto.BulkIngestReport;
+import io.falcon.assignment.model.repository.MessageRepository;
+import io.falcon.assignment.service.MessageIngestService;
+import io.falcon.assignment.service.MessagePageCache;
+import io.falcon.assignment.service.MessageWriteVersion;
+import io.falcon.assignment.service.PalindromeStatsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import static org.mockito.ArgumentMatchers.anyList;
+
+
+public class MessageBulkIngestTests {
+
+    // Test the items of a batch that can't be persisted are reported as rejected, the ones before stay accepted
+    @Test
+    public void postMessages_batchNotPersisted() throws Exception {
+        MessageIngestService ingestService = Mockito.mock(MessageIngestService.class);
+        Mockito.when(ingestService.getBatchSize()).thenReturn(2);
+        Mockito.doNothing()
+                .doThrow(new DataAccessResourceFailureException("Connection refused"))
+                .when(ingestService).ingestBatch(anyList());
+
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        MessageRestController controller = new MessageRestController(Mockito.mock(MessageRepository.class), ingestService,
+                Mockito.mock(MessagePageCache.class), new MessageWriteVersion(), Mockito.mock(PalindromeStatsService.class),
+                objectMapper, new SimpleMeterRegistry());
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setContent(("[" +
+                "{\"content\":\"first\",\"timestamp\":\"2019-10-09 00:12:12+0100\"}," +
+                "{\"content\":\"second\",\"timestamp\":\"2019-10-09 00:12:12+0100\"}," +
+                "{\"content\":\"third\",\"timestamp\":\"2019-10-09 00:12:12+0100\"}," +
+                "{\"content\":\"\",\"timestamp\":\"2019-10-09 00:12:12+0100\"}," +
+                "{\"content\":\"fourth\",\"timestamp\":\"2019-10-09 00:12:12+0100\"}," +
+                "{\"content\":\"fifth\",\"timestamp\":\"2019-10-09 00:12:12+0100\"}" +
+                "]").getBytes(StandardCharsets.UTF_8));
+
+        ResponseEntity response = controller.postMessages(request);
+
+        Assert.assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        BulkIngestReport report = (BulkIngestReport) response.getBody();
+        Assert.assertEquals(2, report.getAccepted());
+        Assert.assertEquals(3, report.getRejected());
+        // The revoked items are reported in order with the invalid one between them
+        Assert.assertEquals(Arrays.asList(2, 3, 4),
+                report.getRejections().stream().map(BulkIngestReport.Rejection::getIndex).collect(Collectors.toList()));
+        Assert.assertEquals("Error: The message could not be persisted", report.getRejections().get(2).getErrors().get(0));
+
+        // The reading stops at the failed batch, the last item is not persisted nor reported
+        Mockito.verify(ingestService, Mockito.times(2)).ingestBatch(anyList());
+    }
+}
@@ -1,8 +1,17 @@
 package io.falcon.assignment.controller.api;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
 import io.falcon.assignment.Application;
 import io.falcon.assignment.model.entity.Message;
 import io.falcon.assignment.model.repository.MessageRepository;
+import io.falcon.assignment.service.BroadcastSequence;
+import io.falcon.assignment.service.MessageBroadcaster;
+import io.falcon.assignment.service.PalindromeStatsService;
+import io.falcon.assignment.utils.SmileCodec;
+import io.falcon.assignment.utils.TimestampCodec;
+import io.falcon.assignment.websocket.ReplayOnSubscribe;
+import io.falcon.assignment.websocket.SmileBroadcastTranscoder;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -12,12 +21,15 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.messaging.simp.stomp.StompFrameHandler;
 import org.springframework.messaging.simp.stomp.StompHeaders;
 import org.springframework.messaging.simp.stomp.StompSession;
 import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
@@ -27,19 +39,29 @@ import org.springframework.web.socket.sockjs.client.SockJsClient;
 import org.springframework.web.socket.sockjs.client.WebSocketTransport;
 
 import javax.transaction.Transactional;
+import java.io.InputStream;
 import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.net.URL;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.zip.GZIPInputStream;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 
 @RunWith(SpringRunner.class)
-@SpringBootTest(classes = Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(classes = Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"messages.broadcast.batch.enabled=true", "messages.broadcast.smile.enabled=true",
+                "messages.stats.flush-delay-ms=3600000"})
 public class MessageGeneralTests {
 
     @Autowired
@@ -58,6 +80,12 @@ public class MessageGeneralTests {
     @Autowired
     private MessageRepository messageRepository;
 
+    @Autowired
+    private MessageBroadcaster messageBroadcaster;
+
+    @Autowired
+    private PalindromeStatsService palindromeStatsService;
+
     @Before
     public void setup() {
         this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
@@ -102,6 +130,294 @@ public class MessageGeneralTests {
         Assert.assertEquals(1, dbMessagesAfter.size());
     }
 
+    // Send a message to the REST API and check that the longest palindrome size is stored with it
+    @Test
+    @Transactional
+    public void sendMessage_longestPalindromeSizeStored() throws Exception {
+
+        String message = "{" +
+                "\"content\":\"abrakadabra\"," +
+                "\"timestamp\":\"2019-10-09 00:12:12+0100\"" +
+                "}";
+
+        this.mockMvc.perform(post("/api/v1/message")
+                .contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+                .content(message))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content").value("abrakadabra"))
+                .andExpect(jsonPath("$.longest_palindrome_size").value(3));
+
+        // The value is read from the database
+        List<Message> dbMessages = messageRepository.findAll();
+        Assert.assertEquals(1, dbMessages.size());
+        Assert.assertEquals(Integer.valueOf(3), dbMessages.get(0).getLongestPalindromeSize());
+
+        this.mockMvc.perform(get("/api/v1/message/all"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].longest_palindrome_size").value(3));
+    }
+
+    // Walk through the messages page by page following the cursors
+    @Test
+    @Transactional
+    public void getMessagePage_followCursor() throws Exception {
+
+        messageRepository.saveAndFlush(new Message("first", "2019-10-09 00:12:12+0000"));
+        messageRepository.saveAndFlush(new Message("third", "2019-10-09 00:12:14+0000"));
+        messageRepository.saveAndFlush(new Message("second", "2019-10-09 00:12:13+0000"));
+
+        MvcResult firstPage = this.mockMvc.perform(get("/api/v1/message/page").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages.length()").value(2))
+                .andExpect(jsonPath("$.messages[0].content").value("first"))
+                .andExpect(jsonPath("$.messages[1].content").value("second"))
+                .andReturn();
+        String cursor = JsonPath.read(firstPage.getResponse().getContentAsString(), "$.next_cursor");
+        Assert.assertNotNull(cursor);
+
+        this.mockMvc.perform(get("/api/v1/message/page").param("limit", "2").param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages.length()").value(1))
+                .andExpect(jsonPath("$.messages[0].content").value("third"))
+                .andExpect(jsonPath("$.next_cursor").isEmpty());
+
+        // Time range filter
+        this.mockMvc.perform(get("/api/v1/message/page")
+                .param("from", "2019-10-09 00:12:13+0000")
+                .param("to", "2019-10-09 00:12:14+0000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages.length()").value(1))
+                .andExpect(jsonPath("$.messages[0].content").value("second"));
+
+        // Every invalid parameter is rejected on its own
+        this.mockMvc.perform(get("/api/v1/message/page").param("cursor", "invalid"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0]").value("Error: Invalid cursor"));
+
+        this.mockMvc.perform(get("/api/v1/message/page").param("limit", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0]").value("Error: The limit must be between 1 and 1000"));
+    }
+
+    // Filter the pages by content and longest palindrome size
+    @Test
+    @Transactional
+    public void getMessagePage_filters() throws Exception {
+
+        Message abrakadabra = new Message("abrakadabra", "2019-10-09 00:12:12+0000");
+        abrakadabra.setLongestPalindromeSize(3);
+        messageRepository.saveAndFlush(abrakadabra);
+        Message racecar = new Message("racecar 100%", "2019-10-09 00:12:13+0000");
+        racecar.setLongestPalindromeSize(7);
+        messageRepository.saveAndFlush(racecar);
+        Message test = new Message("test_abra", "2019-10-09 00:12:14+0000");
+        test.setLongestPalindromeSize(3);
+        messageRepository.saveAndFlush(test);
+
+        this.mockMvc.perform(get("/api/v1/message/page").param("contains", "abra"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages.length()").value(2))
+                .andExpect(jsonPath("$.messages[0].content").value("abrakadabra"))
+                .andExpect(jsonPath("$.messages[1].content").value("test_abra"));
+
+        // The wildcards are matched literally
+        this.mockMvc.perform(get("/api/v1/message/page").param("contains", "00%"))
+                .andExpect(jsonPath("$.messages.length()").value(1))
+                .andExpect(jsonPath("$.messages[0].content").value("racecar 100%"));
+        this.mockMvc.perform(get("/api/v1/message/page").param("prefix", "t_"))
+                .andExpect(jsonPath("$.messages.length()").value(0));
+
+        this.mockMvc.perform(get("/api/v1/message/page").param("prefix", "abra").param("min_palindrome_size", "3"))
+                .andExpect(jsonPath("$.messages.length()").value(1))
+                .andExpect(jsonPath("$.messages[0].content").value("abrakadabra"));
+
+        this.mockMvc.perform(get("/api/v1/message/page").param("min_palindrome_size", "5"))
+                .andExpect(jsonPath("$.messages.length()").value(1))
+                .andExpect(jsonPath("$.messages[0].content").value("racecar 100%"));
+
+        this.mockMvc.perform(get("/api/v1/message/page").param("contains", "ab").param("min_palindrome_size", "-1"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0]").value("Error: The size of the searched text must be between 3 and 100 chars"));
+    }
+
+    // The listings are tagged with the write version, they are only sent again once a message is posted
+    @Test
+    @Transactional
+    public void getMessages_conditional() throws Exception {
+        String eTag = this.mockMvc.perform(get("/api/v1/message/all"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        this.mockMvc.perform(get("/api/v1/message/all")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        this.mockMvc.perform(get("/api/v1/message/page")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT));
+
+        this.mockMvc.perform(post("/api/v1/message")
+                .contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+                .content("{\"content\":\"abrakadabra\",\"timestamp\":\"2019-10-09 00:12:12+0100\"}"))
+                .andExpect(status().isOk());
+
+        MvcResult result = this.mockMvc.perform(get("/api/v1/message/all")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].content").value("abrakadabra"))
+                .andReturn();
+        Assert.assertNotEquals(eTag, result.getResponse().getHeader(HttpHeaders.ETAG));
+    }
+
+    // The JSON responses are gzipped for the clients accepting it
+    @Test
+    public void getResponses_compressed() throws Exception {
+        HttpURLConnection large = (HttpURLConnection) new URL("http://localhost:" + port + "/v2/api-docs").openConnection();
+        large.setRequestProperty(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        Assert.assertEquals(200, large.getResponseCode());
+        Assert.assertEquals("gzip", large.getHeaderField(HttpHeaders.CONTENT_ENCODING));
+        try (InputStream body = new GZIPInputStream(large.getInputStream())) {
+            Assert.assertEquals('{', body.read());
+        }
+
+        HttpURLConnection identity = (HttpURLConnection) new URL("http://localhost:" + port + "/v2/api-docs").openConnection();
+        Assert.assertEquals(200, identity.getResponseCode());
+        Assert.assertNull(identity.getHeaderField(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    // Export all the messages as newline-delimited JSON
+    @Test
+    @Transactional
+    public void exportMessages_ndjson() throws Exception {
+
+        Message first = new Message("abrakadabra", "2019-10-09 00:12:12+0000");
+        first.setLongestPalindromeSize(3);
+        messageRepository.saveAndFlush(first);
+        Message second = new Message("test", "2019-10-09 00:12:13+0000");
+        second.setLongestPalindromeSize(1);
+        messageRepository.saveAndFlush(second);
+
+        MvcResult result = this.mockMvc.perform(get("/api/v1/message/export"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MessageExportController.APPLICATION_NDJSON_VALUE))
+                .andReturn();
+
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertEquals("abrakadabra", JsonPath.read(lines[0], "$.content"));
+        Assert.assertEquals(Integer.valueOf(3), JsonPath.read(lines[0], "$.longest_palindrome_size"));
+        Assert.assertEquals("test", JsonPath.read(lines[1], "$.content"));
+    }
+
+    // Send many messages at once as a JSON array and as newline-delimited JSON
+    @Test
+    @Transactional
+    public void sendBulkMessages_report() throws Exception {
+
+        String array = "[" +
+                "{\"content\":\"abrakadabra\",\"timestamp\":\"2019-10-09 00:12:12+0100\"}," +
+                "{\"content\":\"test\",\"timestamp\":\"2019-10-09T00:12:12+0100\"}," +
+                "{\"content\":\"test\",\"timestamp\":\"2019-10-09 00:12:13+0100\"}" +
+                "]";
+
+        this.mockMvc.perform(post("/api/v1/message/bulk")
+                .contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+                .content(array))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.rejected").value(1))
+                .andExpect(jsonPath("$.rejections.length()").value(1))
+                .andExpect(jsonPath("$.rejections[0].index").value(1))
+                .andExpect(jsonPath("$.rejections[0].errors[0]").value("Error: Invalid timestamp format"));
+        Assert.assertEquals(2, messageRepository.count());
+
+        String ndjson = "{\"content\":\"first\",\"timestamp\":\"2019-10-09 00:12:12+0100\"}\n" +
+                "{\"content\":\"second\",\"timestamp\":\"2019-10-09 00:12:13+0100\"}\n";
+
+        this.mockMvc.perform(post("/api/v1/message/bulk")
+                .contentType(MessageExportController.APPLICATION_NDJSON_VALUE)
+                .content(ndjson))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(2));
+        Assert.assertEquals(4, messageRepository.count());
+
+        // Malformed body
+        this.mockMvc.perform(post("/api/v1/message/bulk")
+                .contentType(MessageExportController.APPLICATION_NDJSON_VALUE)
+                .content("{\"content\":"))
+                .andExpect(status().isBadRequest());
+    }
+
+    // The palindrome aggregates are counted on ingest and flushed to their table
+    @Test
+    @Transactional
+    public void sendBulkMessages_palindromeStats() throws Exception {
+
+        String ndjson = "{\"content\":\"abrakadabra\",\"timestamp\":\"2019-10-12 00:12:12+0000\"}\n" +
+                "{\"content\":\"racecar\",\"timestamp\":\"2019-10-12 00:40:00+0000\"}\n" +
+                "{\"content\":\"test\",\"timestamp\":\"2019-10-12 01:05:00+0000\"}\n";
+        this.mockMvc.perform(post("/api/v1/message/bulk")
+                .contentType(MessageExportController.APPLICATION_NDJSON_VALUE)
+                .content(ndjson))
+                .andExpect(status().isOk());
+
+        // Nothing is flushed yet, the other tests may have flushed other days
+        this.mockMvc.perform(get("/api/v1/message/stats")
+                .param("from", "2019-10-12 00:00:00+0000").param("to", "2019-10-13 00:00:00+0000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages").value(0));
+        palindromeStatsService.flush();
+
+        String firstHour = TimestampCodec.format(TimestampCodec.parse("2019-10-12 00:00:00+0000"));
+        this.mockMvc.perform(get("/api/v1/message/stats")
+                .param("from", "2019-10-12 00:00:00+0000").param("to", "2019-10-13 00:00:00+0000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages").value(3))
+                .andExpect(jsonPath("$.buckets.length()").value(2))
+                .andExpect(jsonPath("$.buckets[0].start").value(firstHour))
+                .andExpect(jsonPath("$.buckets[0].messages").value(2))
+                .andExpect(jsonPath("$.buckets[0].max_palindrome_size").value(7))
+                .andExpect(jsonPath("$.buckets[0].avg_palindrome_size").value(5.0))
+                .andExpect(jsonPath("$.buckets[1].max_palindrome_size").value(1))
+                .andExpect(jsonPath("$.histogram.1").value(1))
+                .andExpect(jsonPath("$.histogram.3").value(1))
+                .andExpect(jsonPath("$.histogram.7").value(1));
+
+        this.mockMvc.perform(get("/api/v1/message/stats").param("bucket", "day")
+                .param("from", "2019-10-12 00:00:00+0000").param("to", "2019-10-12 01:00:00+0000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.buckets.length()").value(1))
+                .andExpect(jsonPath("$.buckets[0].messages").value(2));
+
+        this.mockMvc.perform(get("/api/v1/message/stats").param("bucket", "week"))
+                .andExpect(status().isBadRequest());
+    }
+
+    // The stages of the ingest path are timed and exported with their histograms
+    @Test
+    @Transactional
+    public void sendMessage_stageMetrics() throws Exception {
+
+        this.mockMvc.perform(post("/api/v1/message")
+                .contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+                .content("{\"content\":\"abrakadabra\",\"timestamp\":\"2019-10-09 00:12:12+0100\"}"))
+                .andExpect(status().isOk());
+
+        String metrics = this.mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        for (String stage : new String[]{"validation", "compute", "persist", "serialize", "fanout"}) {
+            Assert.assertTrue(stage, metrics.contains("messages_stage_seconds_bucket{stage=\"" + stage + "\""));
+        }
+        Assert.assertTrue(metrics.contains("messages_websocket_sessions"));
+    }
+
     @Test
     @Transactional
     public void sendInvalidMessageFormat_checkDb() throws Exception {
@@ -157,6 +473,141 @@ public class MessageGeneralTests {
         Assert.assertNotNull(response);
     }
 
+    // The subscribers of the batched destination get the messages in array frames
+    @Test
+    @Transactional
+    public void sendMessage_restToBatchedWebsocket() throws Exception {
+
+        StompSession session = stompClient
+                .connect(WEBSOCKET_URI, new StompSessionHandlerAdapter() {
+                })
+                .get(1, SECONDS);
+        session.subscribe(WEBSOCKET_PUBLIC + ".batch", new DefaultStompFrameHandler());
+        Assert.assertNull(blockingQueue.poll(1, SECONDS));
+
+        String message = "{" +
+                "\"content\":\"abrakadabra\"," +
+                "\"timestamp\":\"2019-10-09 00:12:12+0100\"" +
+                "}";
+
+        this.mockMvc.perform(post("/api/v1/message")
+                .contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+                .content(message))
+                .andExpect(status().isOk());
+
+        String response = blockingQueue.poll(1, SECONDS);
+        Assert.assertNotNull(response);
+        Assert.assertEquals("abrakadabra", JsonPath.read(response, "$[0].content"));
+    }
+
+    // A client subscribing with the last sequence number it has seen gets the messages it missed
+    @Test
+    @Transactional
+    public void subscribeSinceSeq_missedMessagesReplayed() throws Exception {
+
+        BroadcastSequence sequence = messageBroadcaster.getSequence();
+        long firstSeq = sequence.getLast() + 1;
+        for (String content : new String[]{"first", "second", "third"}) {
+            this.mockMvc.perform(post("/api/v1/message")
+                    .contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+                    .content("{\"content\":\"" + content + "\",\"timestamp\":\"2019-10-09 00:12:12+0100\"}"))
+                    .andExpect(status().isOk());
+        }
+        StompSession session = stompClient
+                .connect(WEBSOCKET_URI, new StompSessionHandlerAdapter() {
+                })
+                .get(1, SECONDS);
+        StompHeaders headers = new StompHeaders();
+        headers.setDestination(WEBSOCKET_PUBLIC);
+        headers.add(ReplayOnSubscribe.SINCE_SEQ_HEADER, Long.toString(firstSeq));
+        headers.add(ReplayOnSubscribe.SINCE_NODE_HEADER, sequence.getNodeId());
+        session.subscribe(headers, new DefaultStompFrameHandler());
+
+        Assert.assertEquals("second", JsonPath.read(blockingQueue.poll(1, SECONDS), "$.content"));
+        Assert.assertEquals("third", JsonPath.read(blockingQueue.poll(1, SECONDS), "$.content"));
+        Assert.assertNull(blockingQueue.poll(1, SECONDS));
+
+        // The sequence numbers of another node mean nothing here
+        headers.set(ReplayOnSubscribe.SINCE_NODE_HEADER, "another-node");
+        session.subscribe(headers, new DefaultStompFrameHandler());
+        Assert.assertNull(blockingQueue.poll(1, SECONDS));
+    }
+
+    // The REST endpoints read and answer Smile by content negotiation, JSON stays the default
+    @Test
+    @Transactional
+    public void sendMessage_smile() throws Exception {
+        ObjectMapper smileMapper = Jackson2ObjectMapperBuilder.smile().build();
+
+        byte[] payload = smileMapper.writeValueAsBytes(new Message("abrakadabra", "2019-10-09 00:12:12+0100"));
+        MvcResult result = this.mockMvc.perform(post("/api/v1/message")
+                .contentType(SmileCodec.APPLICATION_SMILE)
+                .accept(SmileCodec.APPLICATION_SMILE)
+                .content(payload))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(SmileCodec.APPLICATION_SMILE))
+                .andReturn();
+        Message stored = smileMapper.readValue(result.getResponse().getContentAsByteArray(), Message.class);
+        Assert.assertEquals("abrakadabra", stored.getContent());
+        Assert.assertEquals(Integer.valueOf(3), stored.getLongestPalindromeSize());
+
+        result = this.mockMvc.perform(get("/api/v1/message/all")
+                .accept(SmileCodec.APPLICATION_SMILE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(SmileCodec.APPLICATION_SMILE))
+                .andReturn();
+        Message[] messages = smileMapper.readValue(result.getResponse().getContentAsByteArray(), Message[].class);
+        Assert.assertEquals(1, messages.length);
+        Assert.assertEquals(stored.getId(), messages[0].getId());
+
+        // The invalid payloads are reported in the accepted format too
+        result = this.mockMvc.perform(post("/api/v1/message")
+                .contentType(SmileCodec.APPLICATION_SMILE)
+                .accept(SmileCodec.APPLICATION_SMILE)
+                .content(smileMapper.writeValueAsBytes(Collections.singletonMap("content", ""))))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+        Assert.assertEquals(2, smileMapper.readValue(result.getResponse().getContentAsByteArray(), List.class).size());
+
+        this.mockMvc.perform(get("/api/v1/message/all")
+                .accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+
+    // The subscribers of the Smile destination, over a plain Websocket, get the messages in binary frames
+    @Test
+    @Transactional
+    public void sendMessage_restToSmileWebsocket() throws Exception {
+        BlockingQueue<byte[]> frames = new LinkedBlockingDeque<>();
+        StompSession session = new WebSocketStompClient(new StandardWebSocketClient())
+                .connect(WEBSOCKET_URI + "/websocket", new StompSessionHandlerAdapter() {
+                })
+                .get(1, SECONDS);
+        session.subscribe(SmileBroadcastTranscoder.DESTINATION, new StompFrameHandler() {
+            public Type getPayloadType(StompHeaders stompHeaders) {
+                return byte[].class;
+            }
+
+            public void handleFrame(StompHeaders stompHeaders, Object o) {
+                Assert.assertEquals(SmileCodec.APPLICATION_SMILE_VALUE,
+                        stompHeaders.getFirst(SmileBroadcastTranscoder.PAYLOAD_TYPE_HEADER));
+                frames.offer((byte[]) o);
+            }
+        });
+        Assert.assertNull(frames.poll(1, SECONDS));
+
+        this.mockMvc.perform(post("/api/v1/message")
+                .contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+                .content("{\"content\":\"abrakadabra\",\"timestamp\":\"2019-10-09 00:12:12+0100\"}"))
+                .andExpect(status().isOk());
+
+        byte[] frame = frames.poll(1, SECONDS);
+        Assert.assertNotNull(frame);
+        Message message = Jackson2ObjectMapperBuilder.smile().build().readValue(frame, Message.class);
+        Assert.assertEquals("abrakadabra", message.getContent());
+    }
+
     // Contract to handle a STOMP frame.
     class DefaultStompFrameHandler implements StompFrameHandler {
 
@@ -0,0 +1,83 @@
+package io.falcon.assignment.controller.api;
+
+import io.falcon.assignment.Application;
+import io.falcon.assignment.model.repository.MessageRepository;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"messages.ingest.mode=write-behind", "messages.ingest.ack=enqueue"})
+public class MessageWriteBehindTests {
+
+    @Autowired
+    private WebApplicationContext wac;
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Before
+    public void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
+    }
+
+    @After
+    public void end() {
+        // The writer commits in its own transactions
+        messageRepository.deleteAll();
+    }
+
+    // Messages are acknowledged on enqueue and persisted in batches by the writer
+    @Test
+    public void sendMessages_persistedByWriter() throws Exception {
+
+        for (int i = 0; i < 10; i++) {
+            String message = "{" +
+                    "\"content\":\"test" + i + "\"," +
+                    "\"timestamp\":\"2019-10-09 00:12:12+0100\"" +
+                    "}";
+
+            this.mockMvc.perform(post("/api/v1/message")
+                    .contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+                    .content(message))
+                    .andExpect(status().isAccepted());
+        }
+
+        // Wait for the writer to persist all of them
+        long deadline = System.currentTimeMillis() + 5000;
+        while (messageRepository.count() < 10 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(10, messageRepository.count());
+    }
+
+    // Invalid messages are rejected before they are queued
+    @Test
+    public void sendInvalidMessage_rejected() throws Exception {
+
+        String message = "{" +
+                "\"content\":\"\"," +
+                "\"timestamp\":\"2019-10-09 00:12:12+0100\"" +
+                "}";
+
+        this.mockMvc.perform(post("/api/v1/message")
+                .contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+                .content(message))
+                .andExpect(status().isBadRequest());
+    }
+}
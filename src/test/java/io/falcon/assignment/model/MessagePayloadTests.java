@@ -0,0 +1,55 @@
+package io.falcon.assignment.model;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.falcon.assignment.model.dto.MessagePayload;
+import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.utils.MessageValidator;
+import io.falcon.assignment.utils.TimestampCodec;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.Arrays;
+
+
+public class MessagePayloadTests {
+
+    // Configured like the ObjectMapper of Spring Boot
+    private ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    // Test reading a payload and building the entity from it
+    @Test
+    public void read_valid() throws Exception {
+        MessagePayload payload = objectMapper.readValue(
+                "{\"timestamp\":\"2019-10-09 00:12:12+0100\",\"id\":5,\"extra\":{\"a\":[1]},\"content\":\"abrakadabra\"}",
+                MessagePayload.class);
+
+        Assert.assertTrue(payload.validate().isEmpty());
+        Message message = payload.toMessage();
+        Assert.assertEquals("abrakadabra", message.getContent());
+        Assert.assertEquals(TimestampCodec.parse("2019-10-09 00:12:12+0100"), message.getTimestampValue());
+        Assert.assertEquals(0, message.getId());
+    }
+
+    // Test the invalid values are reported by the validation, like with the entity
+    @Test
+    public void read_invalid() throws Exception {
+        MessagePayload payload = objectMapper.readValue("{\"content\":\"\",\"timestamp\":\"2019-10-09T00:12:12+0100\"}",
+                MessagePayload.class);
+        Assert.assertEquals(Arrays.asList(MessageValidator.CONTENT_SIZE_ERROR, MessageValidator.TIMESTAMP_FORMAT_ERROR),
+                payload.validate());
+
+        // The scalars are read as text
+        payload = objectMapper.readValue("{\"content\":123,\"timestamp\":null}", MessagePayload.class);
+        Assert.assertEquals("123", payload.getContent());
+        Assert.assertNull(payload.getTimestamp());
+    }
+
+    // Test a value with a structure that is not the one of a message
+    @Test(expected = JsonMappingException.class)
+    public void read_wrongStructure() throws Exception {
+        objectMapper.readValue("{\"content\":[\"abrakadabra\"],\"timestamp\":\"2019-10-09 00:12:12+0100\"}",
+                MessagePayload.class);
+    }
+}
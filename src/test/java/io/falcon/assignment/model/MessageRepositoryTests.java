@@ -2,6 +2,7 @@ package io.falcon.assignment.model;
 
 import io.falcon.assignment.Application;
 import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.model.repository.MessageQuery;
 import io.falcon.assignment.model.repository.MessageRepository;
 import org.junit.After;
 import org.junit.Assert;
@@ -10,10 +11,14 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import javax.transaction.Transactional;
 import javax.validation.ConstraintViolationException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.List;
 
 
@@ -24,6 +29,9 @@ public class MessageRepositoryTests {
     @Autowired
     private MessageRepository messageRepository;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
 
 
     // Test inserting new record and fetching it
@@ -42,6 +50,47 @@ public class MessageRepositoryTests {
         Assert.assertFalse(messageListAfter.isEmpty());
     }
 
+    // Test fetching the messages that are still missing the longest palindrome size
+    @Test
+    @Transactional
+    public void findWithoutLongestPalindromeSize_ok() {
+        Message withSize = new Message("abrakadabra", "2019-05-08 23:12:12+0000");
+        withSize.setLongestPalindromeSize(3);
+        messageRepository.saveAndFlush(withSize);
+
+        Message withoutSize = new Message("test", "2019-05-08 23:12:12+0000");
+        messageRepository.saveAndFlush(withoutSize);
+
+        List<Message> messages = messageRepository.findWithoutLongestPalindromeSize(0, PageRequest.of(0, 10));
+        Assert.assertEquals(1, messages.size());
+        Assert.assertEquals(withoutSize.getId(), messages.get(0).getId());
+
+        // Nothing is returned after the last processed id
+        Assert.assertTrue(messageRepository.findWithoutLongestPalindromeSize(withoutSize.getId(), PageRequest.of(0, 10)).isEmpty());
+    }
+
+    // Test the substring search of a page is served by the trigram index, not by walking the (timestamp, id) index
+    @Test
+    @Transactional
+    public void findPage_containsUsesTrigramIndex() {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.update("INSERT INTO messages (id, content, timestamp, longest_palindrome_size) "
+                + "SELECT 1000000000 + i, 'message number ' || i, CAST(? AS timestamp) + i * interval '1 second', 1 "
+                + "FROM generate_series(1, 200000) i", now);
+        jdbcTemplate.update("INSERT INTO messages (id, content, timestamp, longest_palindrome_size) "
+                + "VALUES (999999999, 'abrakadabra', ?, 3)", now);
+        jdbcTemplate.execute("ANALYZE messages");
+
+        // The query of findPage with a contains filter
+        String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN SELECT * FROM messages "
+                + "WHERE content LIKE '%kadab%' ESCAPE '\\' ORDER BY timestamp, id LIMIT 100", String.class));
+        Assert.assertTrue(plan, plan.contains("_content_trgm_idx"));
+        Assert.assertFalse(plan, plan.contains("_timestamp_id_idx"));
+
+        List<Message> page = messageRepository.findPage(new MessageQuery(null, null, "kadab", null, null, null, 100));
+        Assert.assertEquals(1, page.size());
+    }
+
     // Test the validation of the timestamp with invalid format
     @Test(expected = ConstraintViolationException.class)
     @Transactional
@@ -0,0 +1,80 @@
+package io.falcon.assignment.model;
+
+import com.opentable.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+public class SchemaMigrationTests {
+
+    private EmbeddedPostgres postgres;
+
+    private DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() throws Exception {
+        postgres = EmbeddedPostgres.builder().start();
+        dataSource = postgres.getPostgresDatabase();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        postgres.close();
+    }
+
+    // Test migrating a database created by the old init script, without migration history
+    @Test
+    public void migrate_existingSchema_dataKept() {
+        jdbcTemplate.execute("CREATE SEQUENCE messages_id_seq INCREMENT BY 50");
+        jdbcTemplate.execute("CREATE TABLE messages (id bigint, content character varying(100), timestamp timestamp)");
+        jdbcTemplate.update("INSERT INTO messages VALUES (1, 'abrakadabra', '2019-05-08 23:12:12')");
+
+        migrate();
+
+        Assert.assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject("SELECT count(*) FROM messages", Integer.class));
+        Assert.assertNull(jdbcTemplate.queryForObject("SELECT longest_palindrome_size FROM messages", Integer.class));
+        assertIndexes();
+    }
+
+    // Test creating the schema in an empty database
+    @Test
+    public void migrate_emptyDatabase_schemaCreated() {
+        migrate();
+
+        assertIndexes();
+        jdbcTemplate.update("INSERT INTO messages VALUES (1, 'test', '2019-05-08 23:12:12', 1)");
+        try {
+            jdbcTemplate.update("INSERT INTO messages VALUES (1, 'test', '2019-05-08 23:12:12', 1)");
+            Assert.fail("The id must be unique");
+        } catch (DuplicateKeyException e) {
+            // expected
+        }
+    }
+
+    private void migrate() {
+        Flyway.configure()
+                .dataSource(dataSource)
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .load()
+                .migrate();
+    }
+
+    // The table is partitioned, the existing rows and the old timestamps are in the archive partition
+    private void assertIndexes() {
+        List<String> indexes = jdbcTemplate.queryForList(
+                "SELECT indexname FROM pg_indexes WHERE tablename = 'messages_archive'", String.class);
+        Assert.assertTrue(indexes.contains("messages_archive_pkey"));
+        Assert.assertTrue(indexes.contains("messages_archive_timestamp_id_idx"));
+    }
+}
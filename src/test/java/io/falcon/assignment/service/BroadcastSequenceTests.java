@@ -0,0 +1,34 @@
+package io.falcon.assignment.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class BroadcastSequenceTests {
+
+    // The numbers follow the broadcasts, whatever the order of the ids
+    @Test
+    public void next_inBroadcastOrder() {
+        BroadcastSequence sequence = new BroadcastSequence("node", 4);
+
+        Assert.assertEquals(1, sequence.next(51));
+        Assert.assertEquals(2, sequence.next(2));
+        Assert.assertEquals(3, sequence.next(52));
+
+        Assert.assertArrayEquals(new long[]{2, 52}, sequence.idsAfter(1, 10));
+        Assert.assertArrayEquals(new long[]{51, 2}, sequence.idsAfter(0, 2));
+        Assert.assertEquals(0, sequence.idsAfter(3, 10).length);
+    }
+
+    @Test
+    public void idsAfter_overwritten() {
+        BroadcastSequence sequence = new BroadcastSequence("node", 4);
+        for (long id = 1; id <= 6; id++) {
+            sequence.next(id);
+        }
+
+        // 1 and 2 were overwritten
+        Assert.assertNull(sequence.idsAfter(1, 10));
+        Assert.assertArrayEquals(new long[]{3, 4, 5, 6}, sequence.idsAfter(2, 10));
+    }
+}
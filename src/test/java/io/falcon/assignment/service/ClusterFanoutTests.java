@@ -0,0 +1,241 @@
+package io.falcon.assignment.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.model.repository.MessageQuery;
+import io.falcon.assignment.model.repository.MessageRepository;
+import io.falcon.assignment.service.cluster.ClusterFanout;
+import io.falcon.assignment.service.cluster.ClusterTransport;
+import io.falcon.assignment.service.cluster.InProcessClusterTransport;
+import io.falcon.assignment.service.cluster.MessageHighWaterMark;
+import io.falcon.assignment.service.cluster.PostgresNotifyClusterTransport;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+
+public class ClusterFanoutTests {
+
+    private InProcessClusterTransport transportA;
+    private InProcessClusterTransport transportB;
+    private InProcessClusterTransport transportC;
+
+    private SimpMessageSendingOperations templateA;
+    private SimpMessageSendingOperations templateB;
+    private SimpMessageSendingOperations templateC;
+
+    private MeterRegistry meterRegistryB;
+
+    private ClusterFanout nodeA;
+    private ClusterFanout nodeB;
+    private ClusterFanout nodeC;
+
+    @Before
+    public void setup() {
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        transportA = new InProcessClusterTransport("test");
+        transportB = new InProcessClusterTransport("test");
+        transportC = new InProcessClusterTransport("test");
+
+        templateA = Mockito.mock(SimpMessageSendingOperations.class);
+        templateB = Mockito.mock(SimpMessageSendingOperations.class);
+        templateC = Mockito.mock(SimpMessageSendingOperations.class);
+
+        meterRegistryB = new SimpleMeterRegistry();
+
+        nodeA = new ClusterFanout(transportA, templateA, objectMapper, new MessageWriteVersion(),
+                Mockito.mock(MessagePageCache.class), new SimpleMeterRegistry(), 3600000);
+        nodeB = new ClusterFanout(transportB, templateB, objectMapper, new MessageWriteVersion(),
+                Mockito.mock(MessagePageCache.class), meterRegistryB, 3600000);
+        nodeC = new ClusterFanout(transportC, templateC, objectMapper, new MessageWriteVersion(),
+                Mockito.mock(MessagePageCache.class), new SimpleMeterRegistry(), 3600000);
+    }
+
+    @After
+    public void end() {
+        transportA.close();
+        transportB.close();
+        transportC.close();
+    }
+
+    // A broadcast published by a node reaches every other node exactly once and is skipped by the publisher
+    @Test
+    public void publish_deliveredOncePerOtherNode() {
+        nodeA.publish("/public", new Message("abrakadabra", "2019-10-09 00:12:12+0000"));
+
+        Mockito.verify(templateA, Mockito.never()).send(anyString(), any());
+        Mockito.verify(templateC, Mockito.times(1)).send(eq("/public"), any());
+
+        ArgumentCaptor<org.springframework.messaging.Message> captor = ArgumentCaptor.forClass(org.springframework.messaging.Message.class);
+        Mockito.verify(templateB, Mockito.times(1)).send(eq("/public"), captor.capture());
+        String payload = new String((byte[]) captor.getValue().getPayload(), StandardCharsets.UTF_8);
+        Assert.assertTrue(payload.contains("\"content\":\"abrakadabra\""));
+
+        // The relay latency is measured by the receiving node
+        Assert.assertEquals(1, meterRegistryB.get("messages.cluster.relay.latency").timer().count());
+    }
+
+    // Broadcasts of all the nodes reach all the other nodes
+    @Test
+    public void publish_fromEveryNode() {
+        nodeA.publish("/public", new Message("first", "2019-10-09 00:12:12+0000"));
+        nodeB.publish("/public", new Message("second", "2019-10-09 00:12:12+0000"));
+        nodeC.publish("/public", new Message("third", "2019-10-09 00:12:12+0000"));
+
+        Mockito.verify(templateA, Mockito.times(2)).send(eq("/public"), any());
+        Mockito.verify(templateB, Mockito.times(2)).send(eq("/public"), any());
+        Mockito.verify(templateC, Mockito.times(2)).send(eq("/public"), any());
+    }
+
+    // With a relay listener the received broadcasts go to it, with the id of the message, instead of the broker
+    @Test
+    public void receive_relayListener() {
+        List<Long> relayed = new ArrayList<>();
+        nodeB.setRelayListener((destination, id, json) -> relayed.add(id));
+
+        nodeA.publish("/public", 42, "{\"content\":\"abrakadabra\"}".getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertEquals(Collections.singletonList(42L), relayed);
+        Mockito.verify(templateB, Mockito.never()).send(anyString(), any());
+        Mockito.verify(templateC, Mockito.times(1)).send(eq("/public"), any());
+    }
+
+    // The envelopes a node never got are counted as lost once they are out of the window, the late ones are not
+    @Test
+    public void receive_lostCounted() {
+        List<Consumer<String>> listener = new ArrayList<>();
+        ClusterTransport transport = new ClusterTransport() {
+            public void publish(String payload) {
+            }
+
+            public void setListener(Consumer<String> consumer) {
+                listener.add(consumer);
+            }
+        };
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        new ClusterFanout(transport, templateB, new ObjectMapper(), new MessageWriteVersion(),
+                Mockito.mock(MessagePageCache.class), meterRegistry, 3600000);
+
+        for (long count : new long[]{5, 7, 6, 74}) {
+            listener.get(0).accept("other\n" + System.currentTimeMillis() + '\n' + count + "\n/public\n0\n{}");
+        }
+        // 8 to 10 left the window, 11 to 73 are still in it
+        Assert.assertEquals(3, meterRegistry.get("messages.cluster.relay.lost").counter().count(), 0);
+
+        listener.get(0).accept("other\n" + System.currentTimeMillis() + "\n138\n/public\n0\n{}");
+        Assert.assertEquals(66, meterRegistry.get("messages.cluster.relay.lost").counter().count(), 0);
+        Mockito.verify(templateB, Mockito.times(5)).send(eq("/public"), any());
+    }
+
+    // The origins that sent nothing for origin-idle-ms are forgotten, e.g. the nodes restarted under a new id
+    @Test
+    public void receive_idleOriginsExpired() {
+        List<Consumer<String>> listener = new ArrayList<>();
+        ClusterTransport transport = new ClusterTransport() {
+            public void publish(String payload) {
+            }
+
+            public void setListener(Consumer<String> consumer) {
+                listener.add(consumer);
+            }
+        };
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        new ClusterFanout(transport, templateB, new ObjectMapper(), new MessageWriteVersion(),
+                Mockito.mock(MessagePageCache.class), meterRegistry, 0);
+
+        listener.get(0).accept("first\n" + System.currentTimeMillis() + "\n1\n/public\n0\n{}");
+        listener.get(0).accept("second\n" + System.currentTimeMillis() + "\n1\n/public\n0\n{}");
+        Assert.assertEquals(1, meterRegistry.get("messages.cluster.relay.origins").gauge().value(), 0);
+
+        // Coming back, the numbers sent meanwhile are not counted as lost
+        listener.get(0).accept("first\n" + System.currentTimeMillis() + "\n100\n/public\n0\n{}");
+        Assert.assertEquals(0, meterRegistry.get("messages.cluster.relay.lost").counter().count(), 0);
+    }
+
+    // The channel is an identifier of the LISTEN statement, nothing else is accepted
+    @Test(expected = IllegalArgumentException.class)
+    public void postgresTransport_invalidChannel() {
+        new PostgresNotifyClusterTransport(null, "messages; DROP TABLE messages");
+    }
+
+    // A message committed by another node changes the ETag even if its broadcast never arrived
+    @Test
+    public void highWaterMark_inETag() {
+        JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        Mockito.when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(null, 5L, 6L);
+        MessageWriteVersion writeVersion = new MessageWriteVersion();
+        writeVersion.setHighWaterMark(new MessageHighWaterMark(jdbcTemplate, 0));
+
+        String empty = writeVersion.getETag();
+        Assert.assertTrue(empty, empty.endsWith("-0-0\""));
+        Assert.assertNotEquals(writeVersion.getETag(), writeVersion.getETag());
+    }
+
+    // The mark is read at most once per refresh-ms
+    @Test
+    public void highWaterMark_cached() {
+        JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        Mockito.when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(5L, 6L);
+        MessageHighWaterMark highWaterMark = new MessageHighWaterMark(jdbcTemplate, 3600000);
+
+        Assert.assertEquals(5, highWaterMark.get());
+        Assert.assertEquals(5, highWaterMark.get());
+        Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(anyString(), eq(Long.class));
+    }
+
+    // The cached pages of a message of another node are invalidated before the version changes: a page request
+    // served as soon as the new version is visible gets the message
+    @Test
+    public void receive_pagesInvalidatedBeforeVersion() throws Exception {
+        List<Message> stored = new ArrayList<>();
+        MessageRepository messageRepository = Mockito.mock(MessageRepository.class);
+        Mockito.when(messageRepository.findPage(any())).thenAnswer(invocation -> new ArrayList<>(stored));
+        MessagePageCache messagePageCache = new MessagePageCache(messageRepository, new SimpleMeterRegistry(), true, 1000, 60_000);
+        MessageQuery query = new MessageQuery(null, null, null, 10);
+
+        List<Integer> pageSizes = new ArrayList<>();
+        MessageWriteVersion writeVersion = new MessageWriteVersion() {
+            @Override
+            public void increment() {
+                super.increment();
+                pageSizes.add(messagePageCache.getPage(query).getMessages().size());
+            }
+        };
+        InProcessClusterTransport transport = new InProcessClusterTransport("pages");
+        InProcessClusterTransport otherTransport = new InProcessClusterTransport("pages");
+        try {
+            new ClusterFanout(transport, templateB, new ObjectMapper(), writeVersion, messagePageCache, new SimpleMeterRegistry(), 3600000);
+            ClusterFanout other = new ClusterFanout(otherTransport, templateA, new ObjectMapper(), new MessageWriteVersion(),
+                    Mockito.mock(MessagePageCache.class), new SimpleMeterRegistry(), 3600000);
+            Assert.assertTrue(messagePageCache.getPage(query).getMessages().isEmpty());
+
+            Message message = new Message("abrakadabra", "2019-10-09 00:12:12+0000");
+            message.setId(7);
+            stored.add(message);
+            other.publish("/public", 7, new ObjectMapper().writeValueAsBytes(message));
+
+            Assert.assertEquals(Collections.singletonList(1), pageSizes);
+        } finally {
+            transport.close();
+            otherTransport.close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package io.falcon.assignment.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.service.cluster.ClusterFanout;
+import io.falcon.assignment.websocket.BroadcastBatcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+
+
+public class MessageBroadcasterTests {
+
+    private SimpMessageSendingOperations messagingTemplate = Mockito.mock(SimpMessageSendingOperations.class);
+
+    // The sequence numbers of the messages, in the order the broker got them
+    private List<Long> sent = Collections.synchronizedList(new ArrayList<>());
+
+    // A caller does not wait for the send of another one, the broker still gets the messages in sequence order
+    @Test
+    @SuppressWarnings("unchecked")
+    public void broadcast_sendNotWaited() throws Exception {
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            org.springframework.messaging.Message<byte[]> message = invocation.getArgument(1);
+            if (sent.isEmpty()) {
+                sending.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            sent.add(Long.valueOf(SimpMessageHeaderAccessor.getFirstNativeHeader(
+                    MessageBroadcaster.SEQ_HEADER, message.getHeaders())));
+            return null;
+        }).when(messagingTemplate).send(anyString(), any(org.springframework.messaging.Message.class));
+
+        ObjectProvider<ClusterFanout> clusterFanout = Mockito.mock(ObjectProvider.class);
+        ObjectProvider<BroadcastBatcher> broadcastBatcher = Mockito.mock(ObjectProvider.class);
+        MessageBroadcaster broadcaster = new MessageBroadcaster(messagingTemplate, new ObjectMapper(),
+                clusterFanout, broadcastBatcher, new SimpleMeterRegistry(), 16, 16);
+
+        CompletableFuture<byte[]> first = CompletableFuture.supplyAsync(() -> broadcaster.broadcast(message(1)));
+        Assert.assertTrue(sending.await(5, TimeUnit.SECONDS));
+        broadcaster.broadcast(message(2));
+        broadcaster.broadcast(message(3));
+        Assert.assertTrue(sent.isEmpty());
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(Arrays.asList(1L, 2L, 3L), sent);
+    }
+
+    private static Message message(long id) {
+        Message message = new Message("abrakadabra", "2019-10-09 00:12:12+0000");
+        message.setId(id);
+        return message;
+    }
+}
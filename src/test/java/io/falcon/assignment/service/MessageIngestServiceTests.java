@@ -0,0 +1,104 @@
+package io.falcon.assignment.service;
+
+import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.model.repository.MessageQuery;
+import io.falcon.assignment.model.repository.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+
+
+public class MessageIngestServiceTests {
+
+    private List<Message> stored = new ArrayList<>();
+
+    private MessageRepository messageRepository = Mockito.mock(MessageRepository.class);
+    private MessageBroadcaster messageBroadcaster = Mockito.mock(MessageBroadcaster.class);
+    private MessagePageCache messagePageCache;
+
+    private MessageQuery query = new MessageQuery(null, null, null, 10);
+
+    // The sizes of the page requested as soon as every new version is visible
+    private List<Integer> pageSizes = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        Mockito.when(messageRepository.findPage(any())).thenAnswer(invocation -> new ArrayList<>(stored));
+        Mockito.when(messageRepository.saveAll(anyCollection())).thenAnswer(invocation -> {
+            stored.addAll(invocation.<Collection<Message>>getArgument(0));
+            return null;
+        });
+        messagePageCache = new MessagePageCache(messageRepository, new SimpleMeterRegistry(), true, 1000, 60_000);
+    }
+
+    // The pages are invalidated before the version changes, a request seeing the new version gets the new messages
+    @Test
+    public void ingestBatch_pagesInvalidatedBeforeVersion() {
+        MessageIngestService ingestService = ingestService(MessageIngestService.Mode.SYNC, MessageIngestService.Ack.COMMIT);
+        Assert.assertTrue(messagePageCache.getPage(query).getMessages().isEmpty());
+
+        ingestService.ingestBatch(Collections.singletonList(new Message("abrakadabra", "2019-10-09 00:12:12+0000")));
+        ingestService.ingestBatch(Collections.singletonList(new Message("racecar", "2019-10-09 00:12:13+0000")));
+
+        Assert.assertEquals(Arrays.asList(1, 2), pageSizes);
+    }
+
+    // A message persisted but not broadcast is still acknowledged, with its JSON
+    @Test
+    public void ingest_broadcastFailed() throws Exception {
+        Mockito.when(messageBroadcaster.broadcast(any())).thenThrow(new IllegalStateException("Broker down"));
+        Mockito.when(messageBroadcaster.encode(any())).thenReturn("{}".getBytes(StandardCharsets.UTF_8));
+        MessageIngestService ingestService = ingestService(MessageIngestService.Mode.WRITE_BEHIND, MessageIngestService.Ack.COMMIT);
+        ingestService.start();
+        try {
+            CompletableFuture<byte[]> first = ingestService.ingest(new Message("abrakadabra", "2019-10-09 00:12:12+0000"));
+            CompletableFuture<byte[]> second = ingestService.ingest(new Message("racecar", "2019-10-09 00:12:13+0000"));
+
+            Assert.assertEquals("{}", new String(first.get(5, TimeUnit.SECONDS), StandardCharsets.UTF_8));
+            Assert.assertEquals("{}", new String(second.get(5, TimeUnit.SECONDS), StandardCharsets.UTF_8));
+            Assert.assertEquals(2, stored.size());
+        } finally {
+            ingestService.stop();
+        }
+    }
+
+    // Once stopping, the messages are rejected instead of being acknowledged and never written
+    @Test(expected = IngestQueueFullException.class)
+    public void ingest_afterStop() throws Exception {
+        MessageIngestService ingestService = ingestService(MessageIngestService.Mode.WRITE_BEHIND, MessageIngestService.Ack.ENQUEUE);
+        ingestService.start();
+        ingestService.stop();
+
+        ingestService.ingest(new Message("abrakadabra", "2019-10-09 00:12:12+0000"));
+    }
+
+    private MessageIngestService ingestService(MessageIngestService.Mode mode, MessageIngestService.Ack ack) {
+        MessageWriteVersion writeVersion = new MessageWriteVersion() {
+            @Override
+            public void increment() {
+                super.increment();
+                pageSizes.add(messagePageCache.getPage(query).getMessages().size());
+            }
+        };
+        return new MessageIngestService(messageRepository, messageBroadcaster, messagePageCache, writeVersion,
+                Mockito.mock(MessagePartitionManager.class), Mockito.mock(PalindromeStatsService.class),
+                new PalindromeService(new SimpleMeterRegistry(), false, 0),
+                Mockito.mock(PlatformTransactionManager.class), new SimpleMeterRegistry(),
+                mode, ack, 10, 10, 10);
+    }
+}
@@ -0,0 +1,110 @@
+package io.falcon.assignment.service;
+
+import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.model.repository.MessageQuery;
+import io.falcon.assignment.model.repository.MessageRepository;
+import io.falcon.assignment.utils.TimestampCodec;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.any;
+
+
+public class MessagePageCacheTests {
+
+    private MessageRepository messageRepository;
+    private MeterRegistry meterRegistry;
+    private MessagePageCache cache;
+
+    // The page of the first two messages, there is a third one after it
+    private MessageQuery firstPage = new MessageQuery(null, null, null, 2);
+
+    @Before
+    public void setUp() {
+        messageRepository = Mockito.mock(MessageRepository.class);
+        Mockito.when(messageRepository.findPage(any())).thenReturn(Arrays.asList(
+                message(1, "2019-10-09 00:12:12+0000"),
+                message(2, "2019-10-09 00:12:13+0000"),
+                message(3, "2019-10-09 00:12:14+0000")));
+
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new MessagePageCache(messageRepository, meterRegistry, true, 1000, 60_000);
+    }
+
+    @Test
+    public void getPage_readThrough() {
+        Assert.assertEquals(2, cache.getPage(firstPage).getMessages().size());
+        Assert.assertSame(cache.getPage(firstPage), cache.getPage(new MessageQuery(null, null, null, 2)));
+
+        Mockito.verify(messageRepository, Mockito.times(1)).findPage(any());
+        Assert.assertEquals(2, meterRegistry.get("cache.gets").tag("cache", "messages.page").tag("result", "hit")
+                .functionCounter().count(), 0);
+        Assert.assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "messages.page").tag("result", "miss")
+                .functionCounter().count(), 0);
+    }
+
+    @Test
+    public void onPersisted_onlyAffectedPagesInvalidated() {
+        cache.getPage(firstPage);
+
+        // After the last message of the full page
+        cache.onPersisted(Collections.singletonList(message(4, "2019-10-09 00:12:15+0000")));
+        cache.getPage(firstPage);
+        Mockito.verify(messageRepository, Mockito.times(1)).findPage(any());
+
+        // Outside of the time range of the page
+        MessageQuery range = new MessageQuery(TimestampCodec.parse("2019-10-09 00:12:12+0000"),
+                TimestampCodec.parse("2019-10-09 00:12:20+0000"), null, 10);
+        cache.getPage(range);
+        cache.onPersisted(Collections.singletonList(message(5, "2019-10-09 00:12:30+0000")));
+        cache.getPage(range);
+        Mockito.verify(messageRepository, Mockito.times(2)).findPage(any());
+
+        // Inside the first page
+        cache.onPersisted(Collections.singletonList(message(6, "2019-10-09 00:12:12+0000")));
+        cache.getPage(firstPage);
+        cache.getPage(range);
+        Mockito.verify(messageRepository, Mockito.times(4)).findPage(any());
+    }
+
+    // The index of the pages by their end follows the reloads and the invalidations
+    @Test
+    public void onPersisted_afterReload() {
+        MessageQuery range = new MessageQuery(null, TimestampCodec.parse("2019-10-09 00:12:20+0000"), null, 10);
+        cache.getPage(firstPage);
+        cache.getPage(range);
+        cache.invalidateAll();
+        cache.getPage(firstPage);
+        cache.getPage(range);
+        Mockito.verify(messageRepository, Mockito.times(4)).findPage(any());
+
+        // After the end of the range, then after the full page and inside the range
+        cache.onPersisted(Collections.singletonList(message(4, "2019-10-09 00:12:30+0000")));
+        cache.getPage(firstPage);
+        cache.getPage(range);
+        Mockito.verify(messageRepository, Mockito.times(4)).findPage(any());
+        cache.onPersisted(Collections.singletonList(message(5, "2019-10-09 00:12:15+0000")));
+        cache.getPage(firstPage);
+        cache.getPage(range);
+        Mockito.verify(messageRepository, Mockito.times(5)).findPage(any());
+
+        // Before the end of the full page
+        cache.onPersisted(Collections.singletonList(message(6, "2019-10-09 00:12:12+0000")));
+        cache.getPage(firstPage);
+        Mockito.verify(messageRepository, Mockito.times(6)).findPage(any());
+    }
+
+    private static Message message(long id, String timestamp) {
+        Message message = new Message("abrakadabra", timestamp);
+        message.setId(id);
+        message.setLongestPalindromeSize(3);
+        return message;
+    }
+}
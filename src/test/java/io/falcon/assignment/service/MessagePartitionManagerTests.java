@@ -0,0 +1,131 @@
+package io.falcon.assignment.service;
+
+import io.falcon.assignment.Application;
+import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.model.repository.MessageRepository;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Application.class, properties = {
+        "messages.partitioning.interval=month",
+        "messages.partitioning.retention=2",
+        "messages.backfill.enabled=false"})
+@DirtiesContext
+public class MessagePartitionManagerTests {
+
+    @Autowired
+    private MessagePartitionManager partitionManager;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MessageIngestService messageIngestService;
+
+    // Test a message far in the future goes to the future partition, no partition is created for it
+    @Test
+    public void ingest_farFutureNoNewPartition() {
+        partitionManager.maintain(LocalDateTime.now());
+        List<String> before = partitionNames();
+        Assert.assertTrue(before.contains(MessagePartitionManager.FUTURE));
+
+        messageIngestService.ingestBatch(Arrays.asList(
+                new Message("abrakadabra", "2200-03-15 10:00:00+0000"),
+                new Message("abrakadabra", "9999-12-31 10:00:00+0000")));
+
+        Assert.assertEquals(before, partitionNames());
+        Assert.assertEquals(Integer.valueOf(2), jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM " + MessagePartitionManager.FUTURE + " WHERE content = 'abrakadabra'", Integer.class));
+    }
+
+    // Test the time range reads only scan the partitions of the range
+    @Test
+    public void rangeRead_onlyRelevantPartitionScanned() {
+        MessagePartitionManager.Partition partition = partitionManager.getPartitions().stream()
+                .filter(p -> !p.isArchive() && !p.isFuture())
+                .findFirst().get();
+
+        String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN SELECT * FROM messages "
+                + "WHERE timestamp >= ? AND timestamp < ?", String.class,
+                Timestamp.valueOf(partition.getLower()), Timestamp.valueOf(partition.getLower().plusHours(1))));
+        Assert.assertTrue(plan, plan.contains(partition.getName()));
+        Assert.assertFalse(plan, plan.contains(MessagePartitionManager.ARCHIVE));
+        Assert.assertFalse(plan, plan.contains(MessagePartitionManager.FUTURE));
+    }
+
+    // Test the partitions out of the retention are dropped and the archive is emptied
+    @Test
+    public void maintain_expiredPartitionsDropped() {
+        Message old = new Message("old", "2019-10-09 00:12:12+0000");
+        Message recent = new Message("recent", "2100-06-15 00:00:00+0000");
+        partitionManager.ensurePartitions(Collections.singletonList(recent));
+        messageRepository.saveAndFlush(old);
+        messageRepository.saveAndFlush(recent);
+
+        // The future partition is split, the recent message is moved to the partition of its month
+        partitionManager.maintain(LocalDateTime.of(2100, 6, 20, 0, 0));
+        Assert.assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM messages_p21000601", Integer.class));
+        Assert.assertTrue(jdbcTemplate.queryForList("SELECT indexname FROM pg_indexes WHERE tablename = 'messages_p21000601'",
+                String.class).contains("messages_p21000601_content_trgm_idx"));
+
+        List<String> partitions = partitionNames();
+        Assert.assertTrue(partitions.containsAll(
+                Arrays.asList("messages_p21000601", "messages_p21000701", "messages_p21000801")));
+        for (MessagePartitionManager.Partition partition : partitionManager.getPartitions()) {
+            if (partition.isArchive()) {
+                Assert.assertEquals(LocalDateTime.of(2100, 4, 1, 0, 0), partition.getUpper());
+            } else if (partition.isFuture()) {
+                Assert.assertEquals(LocalDateTime.of(2100, 9, 1, 0, 0), partition.getLower());
+            } else {
+                Assert.assertTrue(partition.getName(), partition.getLower().isAfter(LocalDateTime.of(2100, 4, 1, 0, 0)));
+            }
+        }
+        Assert.assertFalse(messageRepository.findById(old.getId()).isPresent());
+        Assert.assertTrue(messageRepository.findById(recent.getId()).isPresent());
+
+        // The archive still takes the old timestamps
+        messageRepository.saveAndFlush(new Message("old again", "2019-10-09 00:12:12+0000"));
+    }
+
+    // Test the partitions of a failed maintenance are not kept in memory, the rolled back ones are not covered
+    @Test
+    public void maintain_failedRolledBack() {
+        partitionManager.maintain(LocalDateTime.now());
+        List<String> before = partitionNames();
+        // The second partition of the maintenance cannot be created
+        jdbcTemplate.execute("CREATE TABLE messages_p21500201 (id bigint)");
+        try {
+            partitionManager.maintain(LocalDateTime.of(2150, 1, 15, 0, 0));
+            Assert.fail("The maintenance should have failed");
+        } catch (RuntimeException e) {
+            Assert.assertEquals(before, partitionNames());
+        } finally {
+            jdbcTemplate.execute("DROP TABLE messages_p21500201");
+        }
+    }
+
+    private List<String> partitionNames() {
+        return partitionManager.getPartitions().stream()
+                .map(MessagePartitionManager.Partition::getName)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,36 @@
+package io.falcon.assignment.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class PalindromeServiceTests {
+
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private PalindromeService palindromeService = new PalindromeService(meterRegistry, true, 100);
+
+    // The contents with the same letters share the memoized result
+    @Test
+    public void longestPalindromeSize_memoizedByLetters() {
+        Assert.assertEquals(Integer.valueOf(3), palindromeService.longestPalindromeSize("abrakadabra"));
+        Assert.assertEquals(Integer.valueOf(3), palindromeService.longestPalindromeSize("abrakadabra"));
+        Assert.assertEquals(Integer.valueOf(3), palindromeService.longestPalindromeSize("a b r a k a d a b r a!"));
+        Assert.assertEquals(Integer.valueOf(7), palindromeService.longestPalindromeSize("race car"));
+        Assert.assertEquals(Integer.valueOf(0), palindromeService.longestPalindromeSize("1234"));
+        Assert.assertNull(palindromeService.longestPalindromeSize(null));
+
+        Assert.assertEquals(2, meterRegistry.get("cache.gets").tag("cache", "palindrome.memo").tag("result", "hit")
+                .functionCounter().count(), 0);
+        Assert.assertEquals(3, meterRegistry.get("cache.gets").tag("cache", "palindrome.memo").tag("result", "miss")
+                .functionCounter().count(), 0);
+    }
+
+    @Test
+    public void longestPalindromeSize_disabled() {
+        PalindromeService withoutMemo = new PalindromeService(new SimpleMeterRegistry(), false, 100);
+        Assert.assertEquals(Integer.valueOf(3), withoutMemo.longestPalindromeSize("abrakadabra"));
+    }
+}
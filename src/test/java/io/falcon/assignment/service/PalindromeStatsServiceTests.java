@@ -0,0 +1,92 @@
+package io.falcon.assignment.service;
+
+import io.falcon.assignment.model.entity.Message;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+
+
+public class PalindromeStatsServiceTests {
+
+    private JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+
+    private PalindromeStatsService statsService = new PalindromeStatsService(jdbcTemplate, Mockito.mock(PlatformTransactionManager.class));
+
+    private LocalDateTime cutoff = LocalDateTime.of(2019, 10, 11, 0, 0);
+
+    @After
+    public void cleanup() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    // The counts before the cutoff are not flushed while the deleting transaction runs, and dropped once it commits
+    @Test
+    public void deleteBefore_committed() {
+        record();
+        TransactionSynchronizationManager.initSynchronization();
+        statsService.deleteBefore(cutoff);
+
+        statsService.flush();
+        Assert.assertEquals(Arrays.asList(12), flushedDays());
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        statsService.flush();
+        Mockito.verify(jdbcTemplate, Mockito.times(1)).batchUpdate(anyString(), anyList());
+    }
+
+    // The counts before the cutoff are flushed once the deleting transaction rolls back
+    @Test
+    public void deleteBefore_rolledBack() {
+        record();
+        TransactionSynchronizationManager.initSynchronization();
+        statsService.deleteBefore(cutoff);
+
+        statsService.flush();
+        Assert.assertEquals(Arrays.asList(12), flushedDays());
+
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        Mockito.reset(jdbcTemplate);
+        statsService.flush();
+        Assert.assertEquals(Arrays.asList(9), flushedDays());
+    }
+
+    private void record() {
+        Message old = new Message("abrakadabra", "2019-10-09 12:12:12+0000");
+        old.setLongestPalindromeSize(3);
+        Message recent = new Message("racecar", "2019-10-12 12:12:12+0000");
+        recent.setLongestPalindromeSize(7);
+        statsService.record(Arrays.asList(old, recent));
+    }
+
+    private void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Integer> flushedDays() {
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(jdbcTemplate).batchUpdate(anyString(), rows.capture());
+        return rows.getValue().stream()
+                .map(row -> ((Timestamp) row[0]).toLocalDateTime().getDayOfMonth())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,55 @@
+package io.falcon.assignment.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+
+public class RecentMessageBufferTests {
+
+    @Test
+    public void after_fromBuffer() {
+        RecentMessageBuffer buffer = new RecentMessageBuffer(4);
+
+        // Nothing was broadcast since the buffer exists, it does not know what came before
+        Assert.assertNull(buffer.after(10));
+
+        buffer.add(11, json("11"));
+        buffer.add(13, json("13"));
+        buffer.add(12, json("12"));
+
+        Assert.assertEquals(Arrays.asList(12L, 13L), seqs(buffer.after(11)));
+        Assert.assertEquals(Arrays.asList(11L, 12L, 13L), seqs(buffer.after(10)));
+        Assert.assertTrue(buffer.after(13).isEmpty());
+
+        // Before the first message of the buffer
+        Assert.assertNull(buffer.after(9));
+    }
+
+    @Test
+    public void after_overwritten() {
+        RecentMessageBuffer buffer = new RecentMessageBuffer(4);
+        Assert.assertEquals(4, buffer.capacity());
+
+        for (long seq = 1; seq <= 6; seq++) {
+            buffer.add(seq, json(Long.toString(seq)));
+        }
+
+        // 1 and 2 were overwritten
+        Assert.assertNull(buffer.after(1));
+        Assert.assertEquals(Arrays.asList(3L, 4L, 5L, 6L), seqs(buffer.after(2)));
+        Assert.assertEquals("6", new String(buffer.after(5).get(0).getJson(), StandardCharsets.UTF_8));
+    }
+
+    private static List<Long> seqs(List<RecentMessageBuffer.Entry> entries) {
+        return entries.stream().map(RecentMessageBuffer.Entry::getSeq).collect(Collectors.toList());
+    }
+
+    private static byte[] json(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
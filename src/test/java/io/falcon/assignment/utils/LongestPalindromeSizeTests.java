@@ -0,0 +1,96 @@
+package io.falcon.assignment.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+
+public class LongestPalindromeSizeTests {
+
+    private LongestPalindromeSize longestPalindromeSize = new LongestPalindromeSize();
+
+    // Test known inputs
+    @Test
+    public void longestPalindrome_knownInputs() {
+        Assert.assertEquals(3, longestPalindromeSize.longestPalindromicSubstringLinear("abrakadabra"));
+        Assert.assertEquals(4, longestPalindromeSize.longestPalindromicSubstringLinear("abba"));
+        Assert.assertEquals(7, longestPalindromeSize.longestPalindromicSubstringLinear("race car!"));
+        Assert.assertEquals(1, longestPalindromeSize.longestPalindromicSubstringLinear("Aa"));
+        Assert.assertEquals(0, longestPalindromeSize.longestPalindromicSubstringLinear(""));
+        Assert.assertEquals(0, longestPalindromeSize.longestPalindromicSubstringLinear("12 ,.!"));
+    }
+
+    // Test the results are the same as the ones of the reference implementation on random inputs
+    @Test
+    public void longestPalindrome_sameAsReference() {
+        Random random = new Random(42);
+        String alphabet = "abAB1 ,.!é";
+
+        for (int i = 0; i < 20000; i++) {
+            // Mostly up to the content limit, sometimes longer than the reused buffers
+            int length = random.nextInt(10) == 0 ? 100 + random.nextInt(200) : random.nextInt(101);
+            // A small alphabet gives many palindromes
+            int letters = 1 + random.nextInt(alphabet.length());
+            StringBuilder input = new StringBuilder(length);
+            for (int j = 0; j < length; j++) {
+                input.append(alphabet.charAt(random.nextInt(letters)));
+            }
+
+            String content = input.toString();
+            Assert.assertEquals(content, reference(content), longestPalindromeSize.longestPalindromicSubstringLinear(content));
+        }
+    }
+
+    // The previous implementation, expanding the input to $a$b$c$
+    private static int reference(String inputString) {
+        inputString = inputString.replaceAll("[^a-zA-Z]", "");
+        char[] input = inputString.toCharArray();
+        int index = 0;
+        char[] newInput = new char[2 * input.length + 1];
+        for (int i = 0; i < newInput.length; i++) {
+            if (i % 2 != 0) {
+                newInput[i] = input[index++];
+            } else {
+                newInput[i] = '$';
+            }
+        }
+
+        int[] T = new int[newInput.length];
+        int start = 0;
+        int end = 0;
+        for (int i = 0; i < newInput.length; ) {
+            while (start > 0 && end < newInput.length - 1 && newInput[start - 1] == newInput[end + 1]) {
+                start--;
+                end++;
+            }
+            T[i] = end - start + 1;
+
+            if (end == T.length - 1) {
+                break;
+            }
+            int newCenter = end + (i % 2 == 0 ? 1 : 0);
+
+            for (int j = i + 1; j <= end; j++) {
+                T[j] = Math.min(T[i - (j - i)], 2 * (end - j) + 1);
+                if (j + T[i - (j - i)] / 2 == end) {
+                    newCenter = j;
+                    break;
+                }
+            }
+            i = newCenter;
+            end = i + T[i] / 2;
+            start = i - T[i] / 2;
+        }
+
+        int max = Integer.MIN_VALUE;
+        for (int i1 : T) {
+            int val;
+            val = i1 / 2;
+            if (max < val) {
+                max = val;
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,45 @@
+package io.falcon.assignment.utils;
+
+import io.falcon.assignment.model.entity.Message;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+
+public class MessageValidatorTests {
+
+    private static final String HUNDRED_CHARS = String.join("", Collections.nCopies(10, "abrakadabr"));
+
+    // Test the violations are the ones of the javax.validation constraints of the entity
+    @Test
+    public void validate_sameViolationsAsConstraints() {
+        Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+        for (String content : new String[]{"", "a", "abrakadabra", HUNDRED_CHARS, HUNDRED_CHARS + "a"}) {
+            for (String timestamp : new String[]{"2019-10-09 00:12:12+0100", "2019-10-09T00:12:12+0100", "", null}) {
+                Message message = new Message(content, timestamp);
+
+                Set<String> expected = new HashSet<>();
+                for (ConstraintViolation<Message> violation : validator.validate(message)) {
+                    expected.add(violation.getMessage());
+                }
+
+                Assert.assertEquals(content + " / " + timestamp, expected, new HashSet<>(MessageValidator.validate(message)));
+            }
+        }
+    }
+
+    // Test a missing content is rejected, it can't be stored
+    @Test
+    public void validate_missingContent() {
+        Message message = new Message(null, "2019-10-09 00:12:12+0100");
+
+        Assert.assertEquals(Collections.singletonList(MessageValidator.CONTENT_SIZE_ERROR), MessageValidator.validate(message));
+    }
+}
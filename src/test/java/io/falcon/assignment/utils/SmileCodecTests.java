@@ -0,0 +1,40 @@
+package io.falcon.assignment.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+
+public class SmileCodecTests {
+
+    // Test the transcoded value is the same as the JSON one, in fewer bytes
+    @Test
+    public void fromJson_sameValue() throws Exception {
+        byte[] json = ("[{\"content\":\"abrakadabra\",\"timestamp\":\"2019-10-09 00:12:12+0100\",\"longest_palindrome_size\":3},"
+                + "{\"content\":\"anna\",\"timestamp\":\"2019-10-09 00:12:13+0100\",\"longest_palindrome_size\":4}]")
+                .getBytes(StandardCharsets.UTF_8);
+
+        byte[] smile = SmileCodec.fromJson(json);
+
+        JsonNode expected = new ObjectMapper().readTree(json);
+        Assert.assertEquals(expected, new ObjectMapper(new SmileFactory()).readTree(smile));
+        Assert.assertTrue(smile.length < json.length);
+    }
+
+    // Test Smile is only chosen when the client prefers it to JSON, the order of the header breaks a tie
+    @Test
+    public void isPreferred() {
+        Assert.assertTrue(SmileCodec.isPreferred("application/x-jackson-smile"));
+        Assert.assertTrue(SmileCodec.isPreferred("application/json;q=0.5, application/x-jackson-smile"));
+        Assert.assertTrue(SmileCodec.isPreferred("application/x-jackson-smile, application/json"));
+        Assert.assertFalse(SmileCodec.isPreferred("application/json, application/x-jackson-smile"));
+        Assert.assertFalse(SmileCodec.isPreferred("*/*"));
+        Assert.assertFalse(SmileCodec.isPreferred("application/json"));
+        Assert.assertFalse(SmileCodec.isPreferred("not a media type"));
+        Assert.assertFalse(SmileCodec.isPreferred(null));
+    }
+}
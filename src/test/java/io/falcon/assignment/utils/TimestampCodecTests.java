@@ -0,0 +1,49 @@
+package io.falcon.assignment.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.Random;
+
+
+public class TimestampCodecTests {
+
+    // Test parsing valid timestamps with different offsets
+    @Test
+    public void parse_valid() throws Exception {
+        SimpleDateFormat reference = new SimpleDateFormat("yyyy-MM-dd HH:mm:ssZZZZ");
+
+        for (String text : new String[]{"2018-10-09 00:12:12+0100", "2019-05-08 23:12:12+0000",
+                "2020-02-29 12:00:00-0530", "1970-01-01 00:00:00+0000", "2038-01-19 03:14:08+1400"}) {
+            Assert.assertEquals(text, reference.parse(text).getTime(), TimestampCodec.parse(text).getTime());
+        }
+    }
+
+    // Test invalid timestamps are reported with null
+    @Test
+    public void parse_invalid() {
+        for (String text : new String[]{null, "", "invalid format", "2019-10-09T00:12:12+0100", "2019-10-09 00:12:12",
+                "2019-13-09 00:12:12+0100", "2019-02-29 00:12:12+0100", "2019-10-09 24:12:12+0100",
+                "2019-10-09 00:12:12*0100", "2019-10-09 00:12:12+01000", "2019-1a-09 00:12:12+0100"}) {
+            Assert.assertNull(text, TimestampCodec.parse(text));
+        }
+    }
+
+    // Test formatting gives the same result as SimpleDateFormat, and parsing it back gives the same timestamp
+    @Test
+    public void format_sameAsSimpleDateFormat() {
+        SimpleDateFormat reference = new SimpleDateFormat("yyyy-MM-dd HH:mm:ssZZZZ");
+        Random random = new Random(42);
+
+        for (int i = 0; i < 10000; i++) {
+            // Whole seconds between 1970 and 2100
+            Timestamp timestamp = new Timestamp((random.nextLong() & Long.MAX_VALUE) % 4102444800L * 1000);
+
+            String text = TimestampCodec.format(timestamp);
+            Assert.assertEquals(reference.format(timestamp), text);
+            Assert.assertEquals(timestamp, TimestampCodec.parse(text));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.falcon.assignment.websocket;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+
+public class BroadcastBatcherTests {
+
+    private SimpMessageSendingOperations template = Mockito.mock(SimpMessageSendingOperations.class);
+
+    private BroadcastBatcher batcher;
+
+    @After
+    public void tearDown() {
+        batcher.stop();
+    }
+
+    // A full batch is sent right away, the rest after the window
+    @Test
+    public void add_batchedBySizeAndWindow() {
+        batcher = new BroadcastBatcher(template, 200, 2);
+
+        batcher.add(json("{\"content\":\"first\"}"), 0, null);
+        batcher.add(json("{\"content\":\"second\"}"), 0, null);
+        batcher.add(json("{\"content\":\"third\"}"), 0, null);
+
+        List<String> frames = frames(2);
+        Assert.assertEquals("[{\"content\":\"first\"},{\"content\":\"second\"}]", frames.get(0));
+        Assert.assertEquals("[{\"content\":\"third\"}]", frames.get(1));
+    }
+
+    @Test
+    public void add_nothingBeforeTheWindow() throws Exception {
+        batcher = new BroadcastBatcher(template, 500, 100);
+
+        batcher.add(json("{\"content\":\"first\"}"), 0, null);
+
+        Thread.sleep(100);
+        Mockito.verify(template, Mockito.never()).send(any(), any());
+        Assert.assertEquals("[{\"content\":\"first\"}]", frames(1).get(0));
+    }
+
+    // The messages committed together make a frame of their own, after the batch in progress
+    @Test
+    public void addBatch_ownFrame() {
+        batcher = new BroadcastBatcher(template, 1000, 100);
+
+        batcher.add(json("{\"content\":\"first\"}"), 0, null);
+        batcher.addBatch(Arrays.asList(json("{\"content\":\"second\"}"), json("{\"content\":\"third\"}")), 0, null);
+
+        List<String> frames = frames(2);
+        Assert.assertEquals("[{\"content\":\"first\"}]", frames.get(0));
+        Assert.assertEquals("[{\"content\":\"second\"},{\"content\":\"third\"}]", frames.get(1));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> frames(int count) {
+        ArgumentCaptor<Message> captor = ArgumentCaptor.forClass(Message.class);
+        Mockito.verify(template, Mockito.timeout(2000).times(count)).send(eq(BroadcastBatcher.DESTINATION), captor.capture());
+        return captor.getAllValues().stream()
+                .map(message -> new String((byte[]) message.getPayload(), StandardCharsets.UTF_8))
+                .collect(Collectors.toList());
+    }
+
+    private static byte[] json(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
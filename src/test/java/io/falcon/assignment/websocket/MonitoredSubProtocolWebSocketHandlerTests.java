@@ -0,0 +1,131 @@
+package io.falcon.assignment.websocket;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+
+
+public class MonitoredSubProtocolWebSocketHandlerTests {
+
+    private MeterRegistry meterRegistry;
+    private WebSocketSessionMonitor sessionMonitor;
+    private WebSocketSession session;
+
+    private CountDownLatch sendStarted;
+    private CountDownLatch releaseSend;
+    private ExecutorService sender;
+
+    @Before
+    public void setUp() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+        sessionMonitor = new WebSocketSessionMonitor(meterRegistry, 0);
+
+        // The first send to the session blocks until it is released, like a consumer that does not read
+        sendStarted = new CountDownLatch(1);
+        releaseSend = new CountDownLatch(1);
+        session = Mockito.mock(WebSocketSession.class);
+        Mockito.when(session.getId()).thenReturn("session-1");
+        Mockito.when(session.isOpen()).thenReturn(true);
+        Mockito.doAnswer(invocation -> {
+            sendStarted.countDown();
+            releaseSend.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(session).sendMessage(any());
+
+        sender = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        releaseSend.countDown();
+        sender.shutdownNow();
+    }
+
+    @Test
+    public void slowConsumer_drop() throws Exception {
+        WebSocketSession decorated = decorate(ConcurrentWebSocketSessionDecorator.OverflowStrategy.DROP);
+        blockFirstSend(decorated);
+
+        for (int i = 0; i < 100; i++) {
+            decorated.sendMessage(new TextMessage("0123456789"));
+        }
+
+        // The oldest messages were dropped to keep the buffer under the limit, the session is still open
+        Thread.sleep(5);
+        Mockito.verify(session, Mockito.never()).close(any());
+        WebSocketSessionMonitor.SessionState state = sessionMonitor.getSessions().get(0);
+        Assert.assertEquals("session-1", state.getId());
+        Assert.assertTrue(state.getBufferSize() <= 100);
+        Assert.assertTrue(state.isSlow());
+        Assert.assertEquals(1, meterRegistry.get("messages.websocket.sessions.slow").gauge().value(), 0);
+        Assert.assertEquals(state.getBufferSize(), meterRegistry.get("messages.websocket.buffer.max").gauge().value(), 0);
+    }
+
+    @Test
+    public void slowConsumer_disconnect() throws Exception {
+        WebSocketSession decorated = decorate(ConcurrentWebSocketSessionDecorator.OverflowStrategy.TERMINATE);
+        blockFirstSend(decorated);
+
+        try {
+            for (int i = 0; i < 100; i++) {
+                decorated.sendMessage(new TextMessage("0123456789"));
+            }
+            Assert.fail("The session must be closed when its buffer is full");
+        } catch (Exception e) {
+            // SessionLimitExceededException, the SubProtocolWebSocketHandler closes the session
+        }
+    }
+
+    @Test
+    public void connectionClosed_unregistered() throws Exception {
+        MonitoredSubProtocolWebSocketHandler handler = handler(ConcurrentWebSocketSessionDecorator.OverflowStrategy.DROP);
+        handler.addProtocolHandler(new StompSubProtocolHandler());
+        handler.afterConnectionEstablished(session);
+        Assert.assertEquals(1, meterRegistry.get("messages.websocket.sessions").gauge().value(), 0);
+
+        handler.afterConnectionClosed(session, CloseStatus.NORMAL);
+
+        Assert.assertTrue(sessionMonitor.getSessions().isEmpty());
+        Assert.assertEquals(0, meterRegistry.get("messages.websocket.sessions").gauge().value(), 0);
+    }
+
+    private MonitoredSubProtocolWebSocketHandler handler(ConcurrentWebSocketSessionDecorator.OverflowStrategy strategy) {
+        MonitoredSubProtocolWebSocketHandler handler = new MonitoredSubProtocolWebSocketHandler(
+                Mockito.mock(MessageChannel.class), Mockito.mock(SubscribableChannel.class), sessionMonitor, strategy);
+        handler.setSendTimeLimit(60_000);
+        handler.setSendBufferSizeLimit(100);
+        return handler;
+    }
+
+    private WebSocketSession decorate(ConcurrentWebSocketSessionDecorator.OverflowStrategy strategy) {
+        return handler(strategy).decorateSession(session);
+    }
+
+    private void blockFirstSend(WebSocketSession decorated) throws Exception {
+        WebSocketMessage<String> first = new TextMessage("first");
+        sender.submit(() -> {
+            decorated.sendMessage(first);
+            return null;
+        });
+        Assert.assertTrue(sendStarted.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,63 @@
+package io.falcon.assignment.websocket;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompDecoder;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+public class RelayLatencyMonitorTests {
+
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private RelayLatencyMonitor monitor = new RelayLatencyMonitor(meterRegistry);
+
+    // The stamp of a broadcast goes through the STOMP frames, the frame delivered back is timed
+    @Test
+    public void broadcast_stampedAndTimed() {
+        Message<?> stamped = monitor.getBrokerInterceptor().preSend(message("/public"), null);
+        Assert.assertNotNull(SimpMessageHeaderAccessor.getFirstNativeHeader(RelayLatencyMonitor.SENT_AT_HEADER,
+                stamped.getHeaders()));
+
+        monitor.getOutboundInterceptor().preSend(throughStomp(stamped), null);
+
+        Assert.assertEquals(1, meterRegistry.get("messages.broker.relay.latency").timer().count());
+    }
+
+    // The other destinations are neither stamped nor timed
+    @Test
+    public void otherDestination_notTimed() {
+        Message<?> message = monitor.getBrokerInterceptor().preSend(message("/private"), null);
+        Assert.assertNull(SimpMessageHeaderAccessor.getFirstNativeHeader(RelayLatencyMonitor.SENT_AT_HEADER,
+                message.getHeaders()));
+
+        monitor.getOutboundInterceptor().preSend(message, null);
+
+        Assert.assertEquals(0, meterRegistry.get("messages.broker.relay.latency").timer().count());
+    }
+
+    private static Message<byte[]> message(String destination) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setDestination(destination);
+        headers.setLeaveMutable(true);
+        return MessageBuilder.createMessage("{}".getBytes(StandardCharsets.UTF_8), headers.getMessageHeaders());
+    }
+
+    // Encoded like the broker relay does and decoded like the frames it receives
+    private static Message<byte[]> throughStomp(Message<?> message) {
+        StompHeaderAccessor headers = StompHeaderAccessor.wrap(message);
+        headers.updateStompCommandAsClientMessage();
+        byte[] frame = new StompEncoder().encode(headers.getMessageHeaders(), (byte[]) message.getPayload());
+        return new StompDecoder().decode(ByteBuffer.wrap(frame)).get(0);
+    }
+}
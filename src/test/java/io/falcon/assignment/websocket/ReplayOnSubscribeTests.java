@@ -0,0 +1,136 @@
+package io.falcon.assignment.websocket;
+
+import io.falcon.assignment.model.entity.Message;
+import io.falcon.assignment.model.repository.MessageRepository;
+import io.falcon.assignment.service.BroadcastSequence;
+import io.falcon.assignment.service.MessageBroadcaster;
+import io.falcon.assignment.service.RecentMessageBuffer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+
+public class ReplayOnSubscribeTests {
+
+    private BroadcastSequence sequence = new BroadcastSequence("node", 16);
+    private RecentMessageBuffer recentMessages = new RecentMessageBuffer(2);
+
+    private MessageRepository messageRepository = Mockito.mock(MessageRepository.class);
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private BlockingQueue<org.springframework.messaging.Message<?>> frames = new LinkedBlockingDeque<>();
+
+    private ReplayOnSubscribe replayOnSubscribe;
+
+    @Before
+    public void setup() {
+        MessageBroadcaster messageBroadcaster = Mockito.mock(MessageBroadcaster.class);
+        Mockito.when(messageBroadcaster.getSequence()).thenReturn(sequence);
+        Mockito.when(messageBroadcaster.getRecentMessages()).thenReturn(recentMessages);
+        Mockito.when(messageBroadcaster.encode(ArgumentMatchers.any()))
+                .thenAnswer(invocation -> json(invocation.<Message>getArgument(0).getContent()));
+
+        replayOnSubscribe = new ReplayOnSubscribe(messageBroadcaster, messageRepository,
+                (message, timeout) -> frames.add(message), meterRegistry, 100, 1);
+
+        // The messages 101 to 104 were broadcast as 1 to 4, the buffer only holds the last two
+        for (int i = 1; i <= 4; i++) {
+            recentMessages.add(sequence.next(100 + i), json("m" + i));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        replayOnSubscribe.stop();
+    }
+
+    // A gap the buffer covers is replayed from it
+    @Test
+    public void onSubscribe_fromBuffer() throws Exception {
+        replayOnSubscribe.onSubscribe(subscribe("2", "node"));
+
+        assertFrame("3", "m3");
+        assertFrame("4", "m4");
+        Assert.assertTrue(frames.isEmpty());
+        Mockito.verifyZeroInteractions(messageRepository);
+    }
+
+    // An older gap is read from the database by the ids of its sequence numbers, a message no longer stored is skipped
+    @Test
+    public void onSubscribe_fromDatabase() throws Exception {
+        Mockito.when(messageRepository.findAllById(Arrays.asList(102L, 103L, 104L)))
+                .thenReturn(Arrays.asList(message(104, "m4"), message(102, "m2")));
+
+        replayOnSubscribe.onSubscribe(subscribe("1", "node"));
+
+        assertFrame("2", "m2");
+        assertFrame("4", "m4");
+        Assert.assertNull(frames.poll(200, MILLISECONDS));
+        Assert.assertEquals(2, meterRegistry.get("messages.replay").tag("source", "database").counter().count(), 0);
+    }
+
+    // The sequence numbers of another node, or older than the index, cannot be replayed
+    @Test
+    public void onSubscribe_unavailable() throws Exception {
+        replayOnSubscribe.onSubscribe(subscribe("2", "another-node"));
+        replayOnSubscribe.onSubscribe(subscribe("2", null));
+
+        for (int i = 5; i <= 20; i++) {
+            recentMessages.add(sequence.next(100 + i), json("m" + i));
+        }
+        replayOnSubscribe.onSubscribe(subscribe("1", "node"));
+
+        Assert.assertNull(frames.poll(200, MILLISECONDS));
+        Assert.assertEquals(3, meterRegistry.get("messages.replay.unavailable").counter().count(), 0);
+        Mockito.verifyZeroInteractions(messageRepository);
+    }
+
+    private void assertFrame(String seq, String content) throws InterruptedException {
+        org.springframework.messaging.Message<?> frame = frames.poll(1, SECONDS);
+        Assert.assertNotNull(frame);
+        Assert.assertEquals(seq, SimpMessageHeaderAccessor.getFirstNativeHeader(MessageBroadcaster.SEQ_HEADER, frame.getHeaders()));
+        Assert.assertEquals("node", SimpMessageHeaderAccessor.getFirstNativeHeader(MessageBroadcaster.SEQ_NODE_HEADER, frame.getHeaders()));
+        Assert.assertEquals(content, new String((byte[]) frame.getPayload(), StandardCharsets.UTF_8));
+    }
+
+    private static SessionSubscribeEvent subscribe(String sinceSeq, String sinceNode) {
+        StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        headers.setSessionId("session");
+        headers.setSubscriptionId("subscription");
+        headers.setDestination(MessageBroadcaster.DESTINATION);
+        headers.setNativeHeader(ReplayOnSubscribe.SINCE_SEQ_HEADER, sinceSeq);
+        if (sinceNode != null) {
+            headers.setNativeHeader(ReplayOnSubscribe.SINCE_NODE_HEADER, sinceNode);
+        }
+        return new SessionSubscribeEvent(ReplayOnSubscribeTests.class,
+                MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders()));
+    }
+
+    private static Message message(long id, String content) {
+        Message message = new Message(content, "2019-10-09 00:12:12+0100");
+        message.setId(id);
+        return message;
+    }
+
+    private static byte[] json(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}